@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Times {@link BatteryMeterView#draw} for an unchanged state, for dark intensity animation
+ * frames and for level changes, which rebuild the cached geometry.  Run with
+ * adb shell am instrument -w -e class com.android.systemui.BatteryMeterViewBenchmark \
+ *     com.android.systemui.test/android.test.InstrumentationTestRunner
+ */
+public class BatteryMeterViewBenchmark extends AndroidTestCase {
+    private static final String TAG = "BatteryMeterViewBenchmark";
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 64;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 500;
+
+    private BatteryMeterView mView;
+    private Canvas mCanvas;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mView = new BatteryMeterView(getContext());
+        mView.layout(0, 0, WIDTH, HEIGHT);
+        mCanvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        // Demo mode lets the benchmark set the level without battery broadcasts
+        mView.dispatchDemoCommand(DemoMode.COMMAND_ENTER, new Bundle());
+        setBattery(50, false);
+    }
+
+    public void testDrawUnchanged() {
+        for (int i = 0; i < WARMUP; i++) {
+            mView.draw(mCanvas);
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mView.draw(mCanvas);
+        }
+        report("unchanged", start);
+    }
+
+    public void testDrawDarkIntensityAnimation() {
+        for (int i = 0; i < WARMUP; i++) {
+            mView.setDarkIntensity((float) i / WARMUP);
+            mView.draw(mCanvas);
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mView.setDarkIntensity((float) (i % 60) / 59);
+            mView.draw(mCanvas);
+        }
+        report("darkIntensity", start);
+    }
+
+    public void testDrawLevelChanges() {
+        // Build the commands up front so that only the view is timed
+        Bundle[] states = new Bundle[202];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = createBatteryArgs(i % 101, i >= 101);
+        }
+        for (int i = 0; i < WARMUP; i++) {
+            mView.dispatchDemoCommand(DemoMode.COMMAND_BATTERY, states[i]);
+            mView.draw(mCanvas);
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mView.dispatchDemoCommand(DemoMode.COMMAND_BATTERY, states[i % states.length]);
+            mView.draw(mCanvas);
+        }
+        report("levelChanges", start);
+    }
+
+    private void setBattery(int level, boolean plugged) {
+        mView.dispatchDemoCommand(DemoMode.COMMAND_BATTERY, createBatteryArgs(level, plugged));
+    }
+
+    private static Bundle createBatteryArgs(int level, boolean plugged) {
+        Bundle args = new Bundle();
+        args.putString("level", Integer.toString(level));
+        args.putString("plugged", Boolean.toString(plugged));
+        return args;
+    }
+
+    private void report(String name, long start) {
+        long nanos = (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS;
+        Log.i(TAG, name + " draw=" + nanos / 1000f + "us");
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui;
+
+import android.content.Intent;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Measures one cold start of SystemUI and logs the {@link StartupTimeline} percentiles over the
+ * benchmark starts kept on disk.  Instrumenting SystemUI restarts its process, which this test
+ * then starts the services of, so every run measures a cold start.  It takes the status bar and
+ * keyguard down while it runs, so only use it on a test device.  Run it once per start to measure,
+ * e.g. ten times for the last ten starts:
+ * for i in $(seq 10); do adb shell am instrument -w -e class \
+ *     com.android.systemui.StartupTimelineBenchmark \
+ *     com.android.systemui.test/android.test.InstrumentationTestRunner; done
+ */
+public class StartupTimelineBenchmark extends AndroidTestCase {
+    private static final String TAG = "StartupTimelineBenchmark";
+
+    private static final long TIMEOUT = 60 * 1000;
+
+    public void testColdStart() throws Exception {
+        assertTrue("SystemUI already finished starting, run this test on its own",
+                StartupTimeline.markBenchmark());
+        getContext().startService(new Intent(getContext(), SystemUIService.class));
+        assertTrue("SystemUI didn't finish starting within " + TIMEOUT + "ms",
+                StartupTimeline.awaitPersisted(TIMEOUT));
+
+        StringWriter result = new StringWriter();
+        PrintWriter pw = new PrintWriter(result);
+        StartupTimeline.dump(pw);
+        pw.flush();
+        Log.i(TAG, result.toString());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.recents.views;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.android.systemui.recents.RecentsConfiguration;
+import com.android.systemui.recents.misc.SystemServicesProxy;
+import com.android.systemui.recents.model.Task;
+import com.android.systemui.recents.model.TaskStack;
+
+import java.util.ArrayList;
+
+/**
+ * Times the stack layout algorithm on stacks of increasing size, and checks that looking up the
+ * transform of a task gives the same result as looking it up by index.  It runs on a device
+ * rather than the JVM because the algorithm depends on Rect and on RecentsConfiguration, which
+ * reads its values from resources.  Run with
+ * adb shell am instrument -w -e class \
+ *     com.android.systemui.recents.views.TaskStackViewLayoutAlgorithmBenchmark \
+ *     com.android.systemui.test/android.test.InstrumentationTestRunner
+ */
+public class TaskStackViewLayoutAlgorithmBenchmark extends AndroidTestCase {
+    private static final String TAG = "TaskStackViewLayoutAlgorithmBenchmark";
+
+    private static final int[] TASK_COUNTS = { 10, 50, 200 };
+    private static final int ITERATIONS = 50;
+
+    private RecentsConfiguration mConfig;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mConfig = RecentsConfiguration.reinitialize(getContext(),
+                new SystemServicesProxy(getContext()));
+    }
+
+    public void testLayout() {
+        for (int taskCount : TASK_COUNTS) {
+            TaskStack stack = createStack(taskCount);
+            TaskStackViewLayoutAlgorithm algo = new TaskStackViewLayoutAlgorithm(mConfig);
+            algo.computeRects(1080, 1920, new Rect(0, 0, 1080, 1776));
+
+            // The min/max scroll is computed for every stack change
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < ITERATIONS; i++) {
+                algo.computeMinMaxScroll(stack, false, false);
+            }
+            long minMaxNanos = (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS;
+
+            // The visibility report sizes the preloaded task views and thumbnails
+            ArrayList<Task> tasks = stack.getTasks();
+            TaskStackViewLayoutAlgorithm.VisibilityReport report = null;
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < ITERATIONS; i++) {
+                report = algo.computeStackVisibilityReport(tasks);
+            }
+            long reportNanos = (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS;
+            assertTrue(report.numVisibleTasks >= report.numVisibleThumbnails);
+            assertTrue(report.numVisibleTasks <= taskCount);
+
+            // The transforms of all the tasks are looked up for every scroll frame
+            TaskViewTransform transform = new TaskViewTransform();
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (int j = 0; j < taskCount; j++) {
+                    algo.getStackTransform(tasks.get(j), algo.mInitialScrollP, transform, null);
+                    algo.getStackScrollForTask(tasks.get(j));
+                }
+            }
+            long transformNanos = (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS;
+
+            TaskViewTransform expected = new TaskViewTransform();
+            for (int j = 0; j < taskCount; j++) {
+                Task task = tasks.get(j);
+                assertEquals(j, algo.indexOfTaskProgress(task));
+                algo.getStackTransform(j, algo.mInitialScrollP, expected, null);
+                algo.getStackTransform(task, algo.mInitialScrollP, transform, null);
+                assertEquals(expected.rect, transform.rect);
+                assertEquals(expected.p, transform.p, 0f);
+            }
+
+            Log.i(TAG, "tasks=" + taskCount + " computeMinMaxScroll=" + minMaxNanos / 1000 +
+                    "us computeStackVisibilityReport=" + reportNanos / 1000 +
+                    "us transforms=" + transformNanos / 1000 + "us");
+        }
+    }
+
+    /** Creates a stack of the given number of tasks, with every third task affiliated. */
+    private TaskStack createStack(int taskCount) {
+        Intent intent = new Intent().setComponent(new ComponentName("com.android.test", "Test"));
+        ArrayList<Task> tasks = new ArrayList<Task>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            Task.TaskKey key = new Task.TaskKey(i, 0, intent, 0, i, i);
+            int affiliation = (i % 3 == 0 && i > 0) ? i - 1 : i;
+            tasks.add(new Task(key, true, affiliation, 0, "Task " + i, "Task " + i, null, 0,
+                    false, false, null, null));
+        }
+        TaskStack stack = new TaskStack();
+        stack.setTasks(tasks);
+        stack.createAffiliatedGroupings(mConfig);
+        return stack;
+    }
+}
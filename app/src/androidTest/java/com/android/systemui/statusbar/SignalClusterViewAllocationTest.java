@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.statusbar;
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+import android.os.Debug;
+import android.telephony.SubscriptionInfo;
+import android.test.InstrumentationTestCase;
+import android.view.LayoutInflater;
+import android.view.WindowManager;
+import android.widget.ImageView;
+
+import com.android.systemui.R;
+import com.android.systemui.statusbar.policy.NetworkController.IconState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that signal callbacks which repeat the state {@link SignalClusterView} already shows
+ * don't allocate or schedule another apply, and that a changed indicator only replaces its own
+ * drawables.  The view is attached to a window so that its applies run.  Run with
+ * adb shell am instrument -w -e class \
+ *     com.android.systemui.statusbar.SignalClusterViewAllocationTest \
+ *     com.android.systemui.test/android.test.InstrumentationTestRunner
+ */
+public class SignalClusterViewAllocationTest extends InstrumentationTestCase {
+    private static final int SUB_ID = 1;
+    private static final int ITERATIONS = 100;
+    private static final long FRAME_TIMEOUT = 1000; // ms
+
+    private WindowManager mWindowManager;
+    private SignalClusterView mView;
+    private List<SubscriptionInfo> mSubs;
+    private IconState mWifiIcon;
+    private IconState mMobileIcon;
+    private IconState mEthernetIcon;
+    private IconState mAirplaneIcon;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final Context context = getInstrumentation().getTargetContext();
+        mWindowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        mSubs = new ArrayList<>();
+        mSubs.add(new SubscriptionInfo(SUB_ID, "", 0, "", "", 0, 0, "", 0, null, 0, 0, ""));
+        mWifiIcon = new IconState(true, R.drawable.stat_sys_wifi_signal_3_fully, "Wifi");
+        mMobileIcon = new IconState(true, R.drawable.stat_sys_signal_3_fully, "Mobile");
+        mEthernetIcon = new IconState(false, R.drawable.stat_sys_ethernet, "Ethernet");
+        mAirplaneIcon = new IconState(false, R.drawable.stat_sys_airplane_mode, "Airplane");
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mView = (SignalClusterView) LayoutInflater.from(context)
+                        .inflate(R.layout.signal_cluster_view, null);
+                WindowManager.LayoutParams lp = new WindowManager.LayoutParams(
+                        WindowManager.LayoutParams.WRAP_CONTENT,
+                        WindowManager.LayoutParams.WRAP_CONTENT,
+                        WindowManager.LayoutParams.TYPE_SYSTEM_ALERT,
+                        WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                                | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE,
+                        PixelFormat.TRANSLUCENT);
+                mWindowManager.addView(mView, lp);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+        assertTrue("Signal cluster isn't attached", mView.isAttachedToWindow());
+
+        // The first round changes the state and may allocate, e.g. to inflate the subscription's
+        // views and post the apply.
+        sendUpdatesOnMainThread(mWifiIcon);
+        waitForFrame();
+        assertFalse("Apply didn't run", mView.isApplyPending());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mWindowManager.removeViewImmediate(mView);
+            }
+        });
+        super.tearDown();
+    }
+
+    public void testRepeatedUpdatesDontAllocate() {
+        final int[] allocations = new int[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                allocations[0] = countAllocations();
+            }
+        });
+        assertEquals("Allocations for " + ITERATIONS + " identical updates", 0, allocations[0]);
+        assertFalse("Identical updates scheduled an apply", mView.isApplyPending());
+    }
+
+    public void testChangedUpdateOnlyReplacesItsDrawables() throws Exception {
+        final Drawable wifi = getDrawable(R.id.wifi_signal);
+        final Drawable mobile = getDrawable(R.id.mobile_signal);
+        final Drawable mobileDark = getDrawable(R.id.mobile_signal_dark);
+        final Drawable mobileType = getDrawable(R.id.mobile_type);
+
+        sendUpdatesOnMainThread(new IconState(true, R.drawable.stat_sys_wifi_signal_2_fully,
+                "Wifi"));
+        assertTrue("Changed update didn't schedule an apply", mView.isApplyPending());
+        waitForFrame();
+
+        assertNotSame("Wifi drawable wasn't replaced", wifi, getDrawable(R.id.wifi_signal));
+        assertSame(mobile, getDrawable(R.id.mobile_signal));
+        assertSame(mobileDark, getDrawable(R.id.mobile_signal_dark));
+        assertSame(mobileType, getDrawable(R.id.mobile_type));
+    }
+
+    // The alloc counters are deprecated, but they are still the only way to count the
+    // allocations of the calling thread alone.
+    @SuppressWarnings("deprecation")
+    private int countAllocations() {
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sendUpdates(mWifiIcon);
+            }
+            return Debug.getThreadAllocCount();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    private void sendUpdatesOnMainThread(final IconState wifiIcon) {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                sendUpdates(wifiIcon);
+            }
+        });
+    }
+
+    private void sendUpdates(IconState wifiIcon) {
+        mView.setSubs(mSubs);
+        mView.setNoSims(false);
+        mView.setIsAirplaneMode(mAirplaneIcon);
+        mView.setWifiIndicators(true, wifiIcon, wifiIcon, false, false, "Wifi");
+        mView.setMobileDataIndicators(mMobileIcon, mMobileIcon,
+                R.drawable.stat_sys_data_fully_connected_lte, 0, false, false, "LTE", "Mobile",
+                false, SUB_ID);
+        mView.setEthernetIndicators(mEthernetIcon);
+    }
+
+    /** Waits for the next animation frame, which runs the apply posted before it. */
+    private void waitForFrame() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mView.postOnAnimation(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue("No frame within " + FRAME_TIMEOUT + "ms",
+                latch.await(FRAME_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    private Drawable getDrawable(int id) {
+        return ((ImageView) mView.findViewById(id)).getDrawable();
+    }
+}
@@ -24,6 +24,7 @@ import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.database.ContentObserver;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -79,6 +80,28 @@ public class BatteryMeterView extends View implements DemoMode,
     private final Path mClipPath = new Path();
     private final Path mTextPath = new Path();
 
+    // Battery shape and level fill rendered as alpha masks, so a draw is two bitmap blits tinted
+    // by the paint color. Rebuilt only when one of the mCache* values below changes.
+    private final Paint mMaskPaint;
+    private final Canvas mMaskCanvas = new Canvas();
+    private Bitmap mFrameMask;
+    private Bitmap mLevelMask;
+    private boolean mCacheValid;
+    private int mCacheWidth;
+    private int mCacheHeight;
+    private int mCachePaddingLeft, mCachePaddingTop, mCachePaddingRight, mCachePaddingBottom;
+    private int mCacheLevel;
+    private boolean mCachePlugged;
+    private boolean mCacheShowPercent;
+    private boolean mBoltOpaque;
+    private boolean mPctOpaque;
+    private float mPctX, mPctY;
+    private String mPctText;
+
+    // getColorForLevel result for mColorLevel, invalidated by tint and power save changes.
+    private int mLevelColor;
+    private int mColorLevel = BatteryTracker.UNKNOWN_LEVEL;
+
     private BatteryController mBatteryController;
     private boolean mPowerSaveEnabled;
 
@@ -136,6 +159,11 @@ public class BatteryMeterView extends View implements DemoMode,
         mFramePaint.setStrokeWidth(0);
         mFramePaint.setStyle(Paint.Style.FILL_AND_STROKE);
 
+        mMaskPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mMaskPaint.setColor(Color.BLACK);
+        mMaskPaint.setStrokeWidth(0);
+        mMaskPaint.setStyle(Paint.Style.FILL_AND_STROKE);
+
         mBatteryPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mBatteryPaint.setDither(true);
         mBatteryPaint.setStrokeWidth(0);
@@ -207,8 +235,12 @@ public class BatteryMeterView extends View implements DemoMode,
     @Override
     public void onPowerSaveChanged() {
         Log.d(TAG, "onPowerSaveChanged: ");
-        mPowerSaveEnabled = mBatteryController.isPowerSave();
-        invalidate();
+        boolean powerSave = mBatteryController.isPowerSave();
+        if (powerSave != mPowerSaveEnabled) {
+            mPowerSaveEnabled = powerSave;
+            mColorLevel = BatteryTracker.UNKNOWN_LEVEL;
+            invalidate();
+        }
     }
 
     private static float[] loadBoltPoints(Resources res) {
@@ -269,7 +301,11 @@ public class BatteryMeterView extends View implements DemoMode,
         Log.d(TAG, "setDarkIntensity: ");
         int backgroundColor = getBackgroundColor(darkIntensity);
         int fillColor = getFillColor(darkIntensity);
+        if (fillColor == mIconTint && backgroundColor == mFramePaint.getColor()) {
+            return;
+        }
         mIconTint = fillColor;
+        mColorLevel = BatteryTracker.UNKNOWN_LEVEL;
         mFramePaint.setColor(backgroundColor);
         mBoltPaint.setColor(fillColor);
         mChargeColor = fillColor;
@@ -300,12 +336,67 @@ public class BatteryMeterView extends View implements DemoMode,
         final int level = tracker.level;
 
         if (level == BatteryTracker.UNKNOWN_LEVEL) return;
+        if (mWidth <= 0 || mHeight <= 0) return;
 
-        float drawFrac = (float) level / 100f;
+        updateGeometryIfNeeded(level, tracker.plugged);
+        if (level != mColorLevel) {
+            mLevelColor = getColorForLevel(level);
+            mColorLevel = level;
+        }
+
+        // set the battery charging color
+        mBatteryPaint.setColor(tracker.plugged ? mChargeColor : mLevelColor);
+
+        if (mBoltOpaque) {
+            // draw the bolt if opaque
+            c.drawPath(mBoltPath, mBoltPaint);
+        }
+
+        // draw the battery shape background
+        c.drawBitmap(mFrameMask, 0, 0, mFramePaint);
+
+        // draw the battery shape, clipped to charging level
+        c.drawBitmap(mLevelMask, 0, 0, mBatteryPaint);
+
+        if (!tracker.plugged) {
+            if (level <= mCriticalLevel) {
+                // draw the warning text
+                final float x = mWidth * 0.5f;
+                final float y = (mHeight + mWarningTextHeight) * 0.48f;
+                c.drawText(mWarningString, x, y, mWarningTextPaint);
+            } else if (mPctOpaque) {
+                // draw the percentage text
+                mTextPaint.setColor(mLevelColor);
+                c.drawText(mPctText, mPctX, mPctY, mTextPaint);
+            }
+        }
+    }
+
+    private void updateGeometryIfNeeded(int level, boolean plugged) {
+        Log.d(TAG, "updateGeometryIfNeeded: ");
         final int pt = getPaddingTop();
         final int pl = getPaddingLeft();
         final int pr = getPaddingRight();
         final int pb = getPaddingBottom();
+        if (mCacheValid && mCacheWidth == mWidth && mCacheHeight == mHeight
+                && mCachePaddingLeft == pl && mCachePaddingTop == pt
+                && mCachePaddingRight == pr && mCachePaddingBottom == pb
+                && mCacheLevel == level && mCachePlugged == plugged
+                && mCacheShowPercent == mShowPercent) {
+            return;
+        }
+        mCacheValid = true;
+        mCacheWidth = mWidth;
+        mCacheHeight = mHeight;
+        mCachePaddingLeft = pl;
+        mCachePaddingTop = pt;
+        mCachePaddingRight = pr;
+        mCachePaddingBottom = pb;
+        mCacheLevel = level;
+        mCachePlugged = plugged;
+        mCacheShowPercent = mShowPercent;
+
+        float drawFrac = (float) level / 100f;
         final int height = mHeight - pt - pb;
         final int width = mWidth - pl - pr;
 
@@ -332,9 +423,6 @@ public class BatteryMeterView extends View implements DemoMode,
         mFrame.right -= mSubpixelSmoothingRight;
         mFrame.bottom -= mSubpixelSmoothingRight;
 
-        // set the battery charging color
-        mBatteryPaint.setColor(tracker.plugged ? mChargeColor : getColorForLevel(level));
-
         if (level >= FULL) {
             drawFrac = 1f;
         } else if (level <= mCriticalLevel) {
@@ -356,7 +444,8 @@ public class BatteryMeterView extends View implements DemoMode,
         mShapePath.lineTo(mButtonFrame.left, mFrame.top);
         mShapePath.lineTo(mButtonFrame.left, mButtonFrame.top);
 
-        if (tracker.plugged) {
+        mBoltOpaque = false;
+        if (plugged) {
             // define the bolt shape
             final float bl = mFrame.left + mFrame.width() / 4.5f;
             final float bt = mFrame.top + mFrame.height() / 6f;
@@ -382,8 +471,7 @@ public class BatteryMeterView extends View implements DemoMode,
             float boltPct = (mBoltFrame.bottom - levelTop) / (mBoltFrame.bottom - mBoltFrame.top);
             boltPct = Math.min(Math.max(boltPct, 0), 1);
             if (boltPct <= BOLT_LEVEL_THRESHOLD) {
-                // draw the bolt if opaque
-                c.drawPath(mBoltPath, mBoltPaint);
+                mBoltOpaque = true;
             } else {
                 // otherwise cut the bolt out of the overall shape
                 mShapePath.op(mBoltPath, Path.Op.DIFFERENCE);
@@ -391,48 +479,53 @@ public class BatteryMeterView extends View implements DemoMode,
         }
 
         // compute percentage text
-        boolean pctOpaque = false;
-        float pctX = 0, pctY = 0;
-        String pctText = null;
-        if (!tracker.plugged && level > mCriticalLevel && mShowPercent) {
-            mTextPaint.setColor(getColorForLevel(level));
+        mPctOpaque = false;
+        mPctText = null;
+        if (!plugged && level > mCriticalLevel && mShowPercent) {
             mTextPaint.setTextSize(height *
                     (SINGLE_DIGIT_PERCENT ? 0.75f
-                            : (tracker.level == 100 ? 0.38f : 0.5f)));
+                            : (level == 100 ? 0.38f : 0.5f)));
             mTextHeight = -mTextPaint.getFontMetrics().ascent;
-            pctText = String.valueOf(SINGLE_DIGIT_PERCENT ? (level/10) : level);
-            pctX = mWidth * 0.5f;
-            pctY = (mHeight + mTextHeight) * 0.47f;
-            pctOpaque = levelTop > pctY;
-            if (!pctOpaque) {
+            mPctText = String.valueOf(SINGLE_DIGIT_PERCENT ? (level/10) : level);
+            mPctX = mWidth * 0.5f;
+            mPctY = (mHeight + mTextHeight) * 0.47f;
+            mPctOpaque = levelTop > mPctY;
+            if (!mPctOpaque) {
                 mTextPath.reset();
-                mTextPaint.getTextPath(pctText, 0, pctText.length(), pctX, pctY, mTextPath);
+                mTextPaint.getTextPath(mPctText, 0, mPctText.length(), mPctX, mPctY, mTextPath);
                 // cut the percentage text out of the overall shape
                 mShapePath.op(mTextPath, Path.Op.DIFFERENCE);
             }
         }
 
-        // draw the battery shape background
-        c.drawPath(mShapePath, mFramePaint);
+        if (mFrameMask == null || mFrameMask.getWidth() != mWidth
+                || mFrameMask.getHeight() != mHeight) {
+            mFrameMask = createMask(mWidth, mHeight);
+            mLevelMask = createMask(mWidth, mHeight);
+        }
 
-        // draw the battery shape, clipped to charging level
+        // the battery shape background
+        mFrameMask.eraseColor(Color.TRANSPARENT);
+        mMaskCanvas.setBitmap(mFrameMask);
+        mMaskCanvas.drawPath(mShapePath, mMaskPaint);
+
+        // the battery shape, clipped to charging level
         mFrame.top = levelTop;
         mClipPath.reset();
         mClipPath.addRect(mFrame,  Path.Direction.CCW);
         mShapePath.op(mClipPath, Path.Op.INTERSECT);
-        c.drawPath(mShapePath, mBatteryPaint);
+        mLevelMask.eraseColor(Color.TRANSPARENT);
+        mMaskCanvas.setBitmap(mLevelMask);
+        mMaskCanvas.drawPath(mShapePath, mMaskPaint);
+        mMaskCanvas.setBitmap(null);
+    }
 
-        if (!tracker.plugged) {
-            if (level <= mCriticalLevel) {
-                // draw the warning text
-                final float x = mWidth * 0.5f;
-                final float y = (mHeight + mWarningTextHeight) * 0.48f;
-                c.drawText(mWarningString, x, y, mWarningTextPaint);
-            } else if (pctOpaque) {
-                // draw the percentage text
-                c.drawText(pctText, pctX, pctY, mTextPaint);
-            }
-        }
+    private static Bitmap createMask(int width, int height) {
+        Log.d(TAG, "createMask: ");
+        Bitmap mask = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        // Drawn 1:1 into the view, never scaled for density.
+        mask.setDensity(Bitmap.DENSITY_NONE);
+        return mask;
     }
 
     @Override
@@ -489,6 +582,8 @@ public class BatteryMeterView extends View implements DemoMode,
             if (action.equals(Intent.ACTION_BATTERY_CHANGED)) {
                 if (testmode && ! intent.getBooleanExtra("testmode", false)) return;
 
+                final int oldLevel = level;
+                final boolean oldPlugged = plugged;
                 level = (int)(100f
                         * intent.getIntExtra(BatteryManager.EXTRA_LEVEL, 0)
                         / intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100));
@@ -503,9 +598,14 @@ public class BatteryMeterView extends View implements DemoMode,
                 voltage = intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, 0);
                 temperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
 
-                setContentDescription(
-                        context.getString(R.string.accessibility_battery_level, level));
-                postInvalidate();
+                // Most of these broadcasts only change voltage or temperature, which we don't show.
+                if (level != oldLevel) {
+                    setContentDescription(
+                            context.getString(R.string.accessibility_battery_level, level));
+                }
+                if (level != oldLevel || plugged != oldPlugged) {
+                    postInvalidate();
+                }
             } else if (action.equals(ACTION_LEVEL_TEST)) {
                 testmode = true;
                 post(new Runnable() {
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Records how long the named phases of SystemUI startup take, from SystemUIApplication.onCreate
+ * until the deferred services are up, and keeps the timelines of the last few starts in a file so
+ * they can be compared in dumpsys.
+ *
+ * <p>Starts run by the StartupTimelineBenchmark instrumentation are tagged with
+ * {@link #markBenchmark}, and dumpsys only compares starts of the same kind, so benchmark runs and
+ * real boots don't mix.
+ */
+public class StartupTimeline {
+    private static final String TAG = "StartupTimeline";
+    private static final String FILE_NAME = "startup_timeline.txt";
+    // Field of the timelines of benchmark starts, it has no value so it can't match a phase.
+    private static final String BENCHMARK_TAG = "\tbenchmark";
+    private static final int MAX_HISTORY = 10;
+    private static final SimpleDateFormat FORMAT = new SimpleDateFormat("MM-dd HH:mm:ss");
+
+    public static final String PHASE_FIRST_FRAME = "firstFrame";
+
+    private static long sStartTime = -1;
+    private static long sStartWallTime;
+    private static boolean sFinished;
+    private static boolean sBenchmark;
+    private static boolean sPersisted;
+    // Current timeline, in the order the phases ended.
+    private static final ArrayList<String> sNames = new ArrayList<>();
+    private static final ArrayList<long[]> sTimes = new ArrayList<>(); // {offset, duration}
+    // Earlier timelines as read from the file, oldest first, one line each.
+    private static final ArrayList<String> sHistory = new ArrayList<>();
+
+    public static synchronized void traceProcessStart() {
+        sStartTime = SystemClock.uptimeMillis();
+        sStartWallTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Records that {@code phase} ran from {@code startTime}, an uptime, until now.
+     */
+    public static synchronized void tracePhase(String phase, long startTime) {
+        if (sStartTime < 0 || sFinished) return;
+        sNames.add(phase);
+        sTimes.add(new long[] {
+                startTime - sStartTime, SystemClock.uptimeMillis() - startTime });
+    }
+
+    public static void traceMark(String phase) {
+        tracePhase(phase, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Tags the current timeline as a benchmark start.
+     *
+     * @return false if the timeline already ended, so the start can't be measured
+     */
+    public static synchronized boolean markBenchmark() {
+        if (sStartTime < 0 || sFinished) return false;
+        sBenchmark = true;
+        return true;
+    }
+
+    /**
+     * Ends the timeline and appends it to the file on a background thread.
+     */
+    public static synchronized void traceFinished(Context context) {
+        if (sStartTime < 0 || sFinished) return;
+        sFinished = true;
+        final File file = new File(context.getFilesDir(), FILE_NAME);
+        final String line = formatTimeline();
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                persist(file, line);
+                synchronized (StartupTimeline.class) {
+                    sPersisted = true;
+                    StartupTimeline.class.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until the timeline has ended and was added to the file, for the benchmark.
+     *
+     * @return false if that didn't happen within {@code timeout} milliseconds
+     */
+    public static synchronized boolean awaitPersisted(long timeout)
+            throws InterruptedException {
+        final long end = SystemClock.uptimeMillis() + timeout;
+        long now;
+        while (!sPersisted && (now = SystemClock.uptimeMillis()) < end) {
+            StartupTimeline.class.wait(end - now);
+        }
+        return sPersisted;
+    }
+
+    private static String formatTimeline() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(sStartWallTime);
+        if (sBenchmark) {
+            sb.append(BENCHMARK_TAG);
+        }
+        for (int i = 0; i < sNames.size(); i++) {
+            long[] times = sTimes.get(i);
+            sb.append('\t').append(sNames.get(i))
+                    .append('=').append(times[0]).append(',').append(times[1]);
+        }
+        return sb.toString();
+    }
+
+    private static void persist(File file, String line) {
+        AtomicFile atomicFile = new AtomicFile(file);
+        ArrayList<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                atomicFile.openRead(), StandardCharsets.UTF_8))) {
+            String l;
+            while ((l = reader.readLine()) != null) {
+                lines.add(l);
+            }
+        } catch (FileNotFoundException e) {
+            // First start.
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + file, e);
+        }
+        synchronized (StartupTimeline.class) {
+            sHistory.clear();
+            sHistory.addAll(lines);
+        }
+
+        lines.add(line);
+        while (lines.size() > MAX_HISTORY) {
+            lines.remove(0);
+        }
+        FileOutputStream out = null;
+        try {
+            out = atomicFile.startWrite();
+            for (String l : lines) {
+                out.write(l.getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+            }
+            atomicFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + file, e);
+            atomicFile.failWrite(out);
+        }
+    }
+
+    public static synchronized void dump(PrintWriter pw) {
+        pw.print("  StartupTimeline: started=");
+        pw.print(sStartTime < 0 ? "-" : FORMAT.format(new Date(sStartWallTime)));
+        pw.print(" finished="); pw.print(sFinished);
+        pw.print(" benchmark="); pw.println(sBenchmark);
+        for (int i = 0; i < sNames.size(); i++) {
+            long[] times = sTimes.get(i);
+            pw.print("    +"); pw.print(times[0]); pw.print("ms ");
+            pw.print(sNames.get(i)); pw.print(" took "); pw.print(times[1]); pw.println("ms");
+        }
+        ArrayList<String> history = new ArrayList<>();
+        for (String line : sHistory) {
+            if (isBenchmark(line) == sBenchmark) {
+                history.add(line);
+            }
+        }
+        if (history.isEmpty()) return;
+
+        // Percentiles of each phase's duration over the stored starts of the same kind plus this
+        // one.
+        pw.print("  Over the last "); pw.print(history.size() + 1);
+        pw.println(sBenchmark ? " benchmark starts:" : " starts:");
+        for (int i = 0; i < sNames.size(); i++) {
+            String name = sNames.get(i);
+            long[] durations = getHistoricDurations(history, name, sTimes.get(i)[1]);
+            Arrays.sort(durations);
+            pw.print("    "); pw.print(name);
+            pw.print(": n="); pw.print(durations.length);
+            pw.print(" p50="); pw.print(percentile(durations, 50));
+            pw.print("ms p90="); pw.print(percentile(durations, 90));
+            pw.print("ms max="); pw.print(durations[durations.length - 1]); pw.println("ms");
+        }
+    }
+
+    private static boolean isBenchmark(String line) {
+        int tag = line.indexOf(BENCHMARK_TAG);
+        int end = tag + BENCHMARK_TAG.length();
+        return tag >= 0 && (end == line.length() || line.charAt(end) == '\t');
+    }
+
+    private static long[] getHistoricDurations(ArrayList<String> history, String name,
+            long current) {
+        long[] durations = new long[history.size() + 1];
+        int n = 0;
+        String prefix = "\t" + name + "=";
+        for (String line : history) {
+            int start = line.indexOf(prefix);
+            if (start < 0) continue;
+            int comma = line.indexOf(',', start);
+            int end = line.indexOf('\t', comma);
+            try {
+                durations[n] = Long.parseLong(
+                        line.substring(comma + 1, end < 0 ? line.length() : end));
+                n++;
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                // Malformed entry, skip it.
+            }
+        }
+        durations[n++] = current;
+        return Arrays.copyOf(durations, n);
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100f * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
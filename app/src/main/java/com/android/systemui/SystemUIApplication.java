@@ -22,9 +22,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Configuration;
+import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.util.Log;
 
+import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -52,10 +54,24 @@ public class SystemUIApplication extends Application {
     };
 
     /**
-     * Hold a reference on the stuff we start.
+     * Services nothing else depends on that are only started once the first frame is drawn.
+     */
+    private final Class<?>[] DEFERRED_SERVICES = new Class[] {
+            com.android.systemui.usb.StorageNotification.class,
+            com.android.systemui.media.RingtonePlayer.class,
+            com.android.systemui.keyboard.KeyboardUI.class,
+    };
+
+    /**
+     * Hold a reference on the stuff we start, null until the service is started.
      */
     private final SystemUI[] mServices = new SystemUI[SERVICES.length];
+    // Per service: uptime offset of the start from startServicesIfNeeded, and its duration.
+    private final long[] mStartOffsets = new long[SERVICES.length];
+    private final long[] mStartDurations = new long[SERVICES.length];
+    private long mStartTime;
     private boolean mServicesStarted;
+    private boolean mDeferredServicesStarted;
     private boolean mBootCompleted;
     private final Map<Class<?>, Object> mComponents = new HashMap<Class<?>, Object>();
 
@@ -63,6 +79,7 @@ public class SystemUIApplication extends Application {
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "onCreate: ");
+        StartupTimeline.traceProcessStart();
         // Set the application theme that is inherited by all services. Note that setting the
         // application theme in the manifest does only work for activities. Keep this in sync with
         // the theme set there.
@@ -81,7 +98,9 @@ public class SystemUIApplication extends Application {
                 if (mServicesStarted) {
                     final int N = mServices.length;
                     for (int i = 0; i < N; i++) {
-                        mServices[i].onBootCompleted();
+                        if (mServices[i] != null) {
+                            mServices[i].onBootCompleted();
+                        }
                     }
                 }
             }
@@ -111,27 +130,70 @@ public class SystemUIApplication extends Application {
         }
 
         Log.v(TAG, "Starting SystemUI services.");
+        mStartTime = SystemClock.uptimeMillis();
         final int N = SERVICES.length;
-        for (int i=0; i<N; i++) {
-            Class<?> cl = SERVICES[i];
-            if (DEBUG) Log.d(TAG, "loading: " + cl);
-            try {
-                mServices[i] = (SystemUI)cl.newInstance();
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException(ex);
-            } catch (InstantiationException ex) {
-                throw new RuntimeException(ex);
+        for (int i = 0; i < N; i++) {
+            if (indexOf(DEFERRED_SERVICES, SERVICES[i]) < 0) {
+                startService(i);
             }
-            mServices[i].mContext = this;
-            mServices[i].mComponents = mComponents;
-            if (DEBUG) Log.d(TAG, "running: " + mServices[i]);
-            mServices[i].start();
+        }
+        mServicesStarted = true;
+
+        // The rest waits until the status bar has drawn its first frame.
+        DejankUtils.postAfterTraversal(new Runnable() {
+            @Override
+            public void run() {
+                Log.v(TAG, "Starting deferred SystemUI services.");
+                StartupTimeline.traceMark(StartupTimeline.PHASE_FIRST_FRAME);
+                for (int i = 0; i < N; i++) {
+                    startService(i);
+                }
+                mDeferredServicesStarted = true;
+                StartupTimeline.traceFinished(SystemUIApplication.this);
+            }
+        });
+    }
+
+    /**
+     * Starts the service at {@code index} in {@link #SERVICES}, if it isn't started yet.
+     */
+    private void startService(int index) {
+        Log.d(TAG, "startService: ");
+        if (mServices[index] != null) {
+            return;
+        }
+        Class<?> cl = SERVICES[index];
+        final long start = SystemClock.uptimeMillis();
+        if (DEBUG) Log.d(TAG, "loading: " + cl);
+        SystemUI service;
+        try {
+            service = (SystemUI)cl.newInstance();
+        } catch (IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        } catch (InstantiationException ex) {
+            throw new RuntimeException(ex);
+        }
+        service.mContext = this;
+        service.mComponents = mComponents;
+        if (DEBUG) Log.d(TAG, "running: " + service);
+        service.start();
+        mServices[index] = service;
+
+        if (mBootCompleted) {
+            service.onBootCompleted();
+        }
+        mStartOffsets[index] = start - mStartTime;
+        mStartDurations[index] = SystemClock.uptimeMillis() - start;
+        StartupTimeline.tracePhase("service/" + cl.getSimpleName(), start);
+    }
 
-            if (mBootCompleted) {
-                mServices[i].onBootCompleted();
+    private static int indexOf(Class<?>[] classes, Class<?> cl) {
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i] == cl) {
+                return i;
             }
         }
-        mServicesStarted = true;
+        return -1;
     }
 
     @Override
@@ -140,7 +202,9 @@ public class SystemUIApplication extends Application {
         if (mServicesStarted) {
             int len = mServices.length;
             for (int i = 0; i < len; i++) {
-                mServices[i].onConfigurationChanged(newConfig);
+                if (mServices[i] != null) {
+                    mServices[i].onConfigurationChanged(newConfig);
+                }
             }
         }
     }
@@ -151,8 +215,26 @@ public class SystemUIApplication extends Application {
         return (T) mComponents.get(interfaceType);
     }
 
+    /**
+     * @return the services, with null for those that haven't been started yet
+     */
     public SystemUI[] getServices() {
         Log.d(TAG, "getServices: ");
         return mServices;
     }
+
+    public void dumpStartup(PrintWriter pw) {
+        pw.print("SystemUI startup: deferredStarted="); pw.println(mDeferredServicesStarted);
+        StartupTimeline.dump(pw);
+        for (int i = 0; i < SERVICES.length; i++) {
+            pw.print("  "); pw.print(SERVICES[i].getSimpleName());
+            if (mServices[i] == null) {
+                pw.println(": not started");
+                continue;
+            }
+            pw.print(": at +"); pw.print(mStartOffsets[i]);
+            pw.print("ms took "); pw.print(mStartDurations[i]); pw.print("ms");
+            pw.println(indexOf(DEFERRED_SERVICES, SERVICES[i]) >= 0 ? " (deferred)" : "");
+        }
+    }
 }
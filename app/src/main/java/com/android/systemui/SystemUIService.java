@@ -42,15 +42,21 @@ public class SystemUIService extends Service {
     @Override
     protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
         Log.d(TAG, "dump: ");
-        SystemUI[] services = ((SystemUIApplication) getApplication()).getServices();
+        SystemUIApplication app = (SystemUIApplication) getApplication();
+        SystemUI[] services = app.getServices();
         if (args == null || args.length == 0) {
+            app.dumpStartup(pw);
             for (SystemUI ui: services) {
+                if (ui == null) continue;
                 pw.println("dumping service: " + ui.getClass().getName());
                 ui.dump(fd, pw, args);
             }
+        } else if ("startup".equals(args[0])) {
+            app.dumpStartup(pw);
         } else {
             String svc = args[0];
             for (SystemUI ui: services) {
+                if (ui == null) continue;
                 String name = ui.getClass().getName();
                 if (name.endsWith(svc)) {
                     ui.dump(fd, pw, args);
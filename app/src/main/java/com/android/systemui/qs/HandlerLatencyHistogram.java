@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.qs;
+
+import java.io.PrintWriter;
+
+/**
+ * Coarse histogram of message latencies, such as how long a tile's handler messages take to run.
+ * Recorded on one thread and read from dump, so all access is synchronized.
+ */
+public class HandlerLatencyHistogram {
+    /** Upper bounds (exclusive, in ms) of every bucket but the last. */
+    private static final long[] BUCKET_LIMITS = { 1, 4, 16, 64, 256, 1024 };
+
+    private final int[] mCounts = new int[BUCKET_LIMITS.length + 1];
+    private long mTotalTime;
+    private long mMaxTime;
+    private String mMaxName;
+
+    public synchronized void record(String name, long durationMs) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS.length && durationMs >= BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+        mCounts[bucket]++;
+        mTotalTime += durationMs;
+        if (durationMs > mMaxTime) {
+            mMaxTime = durationMs;
+            mMaxName = name;
+        }
+    }
+
+    public synchronized void dump(PrintWriter pw) {
+        int total = 0;
+        for (int count : mCounts) {
+            total += count;
+        }
+        pw.print("n="); pw.print(total);
+        pw.print(" avg="); pw.print(total > 0 ? mTotalTime / total : 0);
+        pw.print("ms max="); pw.print(mMaxTime);
+        pw.print("ms ("); pw.print(mMaxName); pw.print(") [");
+        for (int i = 0; i < mCounts.length; i++) {
+            if (i > 0) pw.print(' ');
+            if (i < BUCKET_LIMITS.length) {
+                pw.print('<'); pw.print(BUCKET_LIMITS[i]);
+            } else {
+                pw.print(">="); pw.print(BUCKET_LIMITS[i - 1]);
+            }
+            pw.print(':'); pw.print(mCounts[i]);
+        }
+        pw.println(']');
+    }
+}
@@ -17,20 +17,36 @@
 package com.android.systemui.qs;
 
 import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.ViewStub;
 import android.widget.FrameLayout;
 
 import com.android.systemui.R;
 
+import java.util.ArrayList;
+
 /**
- * Wrapper view with background which contains {@link QSPanel}
+ * Wrapper view with background which contains {@link QSPanel}. The panel is inflated from a stub
+ * the first time it is used, or ahead of that when the main thread is idle.
  */
 public class QSContainer extends FrameLayout {
 
     public static final String TAG = "QSContainer";
     private int mHeightOverride = -1;
+    private ViewStub mQSPanelStub;
     private QSPanel mQSPanel;
+    private final ArrayList<OnInflateListener> mOnInflateListeners = new ArrayList<>();
+    private boolean mIdleInflatePending;
+
+    /**
+     * Wires up the panel once it has been inflated.
+     */
+    public interface OnInflateListener {
+        void onQsPanelInflated(QSPanel panel);
+    }
 
     public QSContainer(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -40,7 +56,59 @@ public class QSContainer extends FrameLayout {
     protected void onFinishInflate() {
         super.onFinishInflate();
         Log.d(TAG, "onFinishInflate: ");
-        mQSPanel = (QSPanel) findViewById(R.id.quick_settings_panel);
+        mQSPanelStub = (ViewStub) findViewById(R.id.quick_settings_panel_stub);
+    }
+
+    /**
+     * Adds a listener that is called once the panel is inflated, or right away if it already is.
+     */
+    public void addOnInflateListener(OnInflateListener listener) {
+        Log.d(TAG, "addOnInflateListener: ");
+        mOnInflateListeners.add(listener);
+        if (mQSPanel != null) {
+            listener.onQsPanelInflated(mQSPanel);
+        }
+    }
+
+    /**
+     * @return the panel, inflating it if needed
+     */
+    public QSPanel getQsPanel() {
+        Log.d(TAG, "getQsPanel: ");
+        if (mQSPanel == null) {
+            mQSPanel = (QSPanel) mQSPanelStub.inflate();
+            mQSPanelStub = null;
+            for (int i = 0; i < mOnInflateListeners.size(); i++) {
+                mOnInflateListeners.get(i).onQsPanelInflated(mQSPanel);
+            }
+        }
+        return mQSPanel;
+    }
+
+    /**
+     * @return the panel, or null if it hasn't been inflated yet
+     */
+    public QSPanel getQsPanelIfInflated() {
+        return mQSPanel;
+    }
+
+    /**
+     * Inflates the panel the next time the main thread is idle, unless it is already there.
+     */
+    public void inflateWhenIdle() {
+        Log.d(TAG, "inflateWhenIdle: ");
+        if (mQSPanel != null || mIdleInflatePending) {
+            return;
+        }
+        mIdleInflatePending = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                mIdleInflatePending = false;
+                getQsPanel();
+                return false;
+            }
+        });
     }
 
     @Override
@@ -68,7 +136,7 @@ public class QSContainer extends FrameLayout {
      */
     public int getDesiredHeight() {
         Log.d(TAG, "getDesiredHeight: ");
-        if (mQSPanel.isClosingDetail()) {
+        if (mQSPanel != null && mQSPanel.isClosingDetail()) {
             return mQSPanel.getGridHeight() + getPaddingTop() + getPaddingBottom();
         } else {
             return getMeasuredHeight();
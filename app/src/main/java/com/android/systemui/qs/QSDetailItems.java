@@ -193,6 +193,11 @@ public class QSDetailItems extends FrameLayout {
             mItems.addView(view);
         }
         view.setVisibility(mItemsVisible ? VISIBLE : INVISIBLE);
+        if (view.getTag() == item) {
+            // The row already shows this item, see Item.
+            return;
+        }
+        view.setTag(item);
         final ImageView iv = (ImageView) view.findViewById(android.R.id.icon);
         iv.setImageResource(item.icon);
         iv.getOverlay().clear();
@@ -249,6 +254,10 @@ public class QSDetailItems extends FrameLayout {
         }
     }
 
+    /**
+     * A row of the detail list. Rows are only rebound when they get a different Item instance,
+     * so callers can pass the same instance again for rows that did not change.
+     */
     public static class Item {
         public int icon;
         public Drawable overlay;
@@ -27,6 +27,7 @@ import android.os.Handler;
 import android.os.Message;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -60,6 +61,13 @@ public class QSPanel extends ViewGroup {
     protected final View mBrightnessView;
     private final QSDetailClipper mClipper;
     private final H mHandler = new H();
+    // How long tiles keep their controller registrations after the panel stops listening, so
+    // quickly reopening the shade doesn't tear down and re-register every callback.
+    private static final long TILE_LISTENING_RELEASE_DELAY = 3000;
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+    // Guards the pending tile states, which are written from the tile host looper.
+    private final Object mPendingStateLock = new Object();
+    private boolean mTileFramePosted;
 
     private int mColumns;
     private int mCellWidth;
@@ -72,11 +80,13 @@ public class QSPanel extends ViewGroup {
     private int mGridHeight;
     private boolean mExpanded;
     private boolean mListening;
+    private boolean mTilesListening;
     private boolean mClosingDetail;
 
     private Record mDetailRecord;
     private Callback mCallback;
     private BrightnessController mBrightnessController;
+    private BrightnessMirrorController mBrightnessMirrorController;
     private QSTileHost mHost;
 
     private QSFooter mFooter;
@@ -127,9 +137,9 @@ public class QSPanel extends ViewGroup {
 
     public void setBrightnessMirror(BrightnessMirrorController c) {
         super.onFinishInflate();
+        mBrightnessMirrorController = c;
         ToggleSlider brightnessSlider = (ToggleSlider) findViewById(R.id.brightness_slider);
-        ToggleSlider mirror = (ToggleSlider) c.getMirror().findViewById(R.id.brightness_slider);
-        brightnessSlider.setMirror(mirror);
+        // The slider picks up the mirror itself once it's touched, see ToggleSlider.
         brightnessSlider.setMirrorController(c);
     }
 
@@ -162,6 +172,7 @@ public class QSPanel extends ViewGroup {
         }
         for (TileRecord r : mRecords) {
             r.tile.clearState();
+            r.appliedState = null;
         }
         if (mListening) {
             refreshAllTiles();
@@ -201,8 +212,15 @@ public class QSPanel extends ViewGroup {
     public void setListening(boolean listening) {
         if (mListening == listening) return;
         mListening = listening;
-        for (TileRecord r : mRecords) {
-            r.tile.setListening(mListening);
+        mHandler.removeCallbacks(mReleaseTileListening);
+        if (mListening) {
+            if (mHost != null) {
+                // Tiles are only built once the panel is first shown.
+                mHost.createTilesIfNeeded();
+            }
+            setTilesListening(true);
+        } else {
+            mHandler.postDelayed(mReleaseTileListening, TILE_LISTENING_RELEASE_DELAY);
         }
         mFooter.setListening(mListening);
         if (mListening) {
@@ -215,6 +233,33 @@ public class QSPanel extends ViewGroup {
         }
     }
 
+    /**
+     * Called once the shade has settled open, to get the brightness mirror ready while the main
+     * thread is idle, before the slider is first dragged.
+     */
+    public void prepareBrightnessMirror() {
+        Log.d(TAG, "prepareBrightnessMirror: ");
+        if (mBrightnessMirrorController != null) {
+            mBrightnessMirrorController.inflateWhenIdle();
+        }
+    }
+
+    private void setTilesListening(boolean listening) {
+        Log.d(TAG, "setTilesListening: ");
+        mTilesListening = listening;
+        for (TileRecord r : mRecords) {
+            r.tile.setPanelListening(listening);
+        }
+    }
+
+    private final Runnable mReleaseTileListening = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(TAG, "mReleaseTileListening: run: ");
+            setTilesListening(false);
+        }
+    };
+
     public void refreshAllTiles() {
         for (TileRecord r : mRecords) {
             r.tile.refreshState();
@@ -242,10 +287,6 @@ public class QSPanel extends ViewGroup {
         mHandler.obtainMessage(H.SHOW_DETAIL, show ? 1 : 0, 0, r).sendToTarget();
     }
 
-    private void setTileVisibility(View v, int visibility) {
-        mHandler.obtainMessage(H.SET_TILE_VISIBILITY, visibility, 0, v).sendToTarget();
-    }
-
     private void handleSetTileVisibility(View v, int visibility) {
         if (visibility == VISIBLE && !mGridContentVisible) {
             visibility = INVISIBLE;
@@ -267,10 +308,72 @@ public class QSPanel extends ViewGroup {
         }
     }
 
+    /**
+     * Snapshots {@code state} for {@code r} and schedules it to be drawn on the next frame.
+     * Repeated updates to the same tile within a frame collapse into the latest one. May be
+     * called from any thread.
+     */
+    private void queueTileState(TileRecord r, QSTile.State state) {
+        synchronized (mPendingStateLock) {
+            if (r.pendingState == null) {
+                r.pendingState = r.tile.newTileState();
+            }
+            state.copyTo(r.pendingState);
+            r.stateDirty = true;
+            if (!mTileFramePosted) {
+                mTileFramePosted = true;
+                mChoreographer.postFrameCallback(mDrawTilesCallback);
+            }
+        }
+    }
+
+    private final Choreographer.FrameCallback mDrawTilesCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            Log.d(TAG, "mDrawTilesCallback: doFrame: ");
+            drawDirtyTiles();
+        }
+    };
+
+    /**
+     * Draws every tile with a pending state in a single pass. Tiles whose state did not change
+     * since they were last drawn are skipped, so their views are not touched at all.
+     */
+    private void drawDirtyTiles() {
+        Log.d(TAG, "drawDirtyTiles: ");
+        synchronized (mPendingStateLock) {
+            mTileFramePosted = false;
+        }
+        final int count = mRecords.size();
+        for (int i = 0; i < count; i++) {
+            final TileRecord r = mRecords.get(i);
+            if (r.openingDetail) {
+                // Keep the state pending, it is drawn once the detail has finished opening.
+                continue;
+            }
+            final boolean changed;
+            synchronized (mPendingStateLock) {
+                if (!r.stateDirty) continue;
+                r.stateDirty = false;
+                if (r.appliedState == null) {
+                    r.appliedState = r.tile.newTileState();
+                    r.pendingState.copyTo(r.appliedState);
+                    changed = true;
+                } else {
+                    changed = r.pendingState.copyTo(r.appliedState);
+                }
+            }
+            if (changed) {
+                drawTile(r, r.appliedState);
+            }
+        }
+    }
+
     private void drawTile(TileRecord r, QSTile.State state) {
         final int visibility = state.visible ? VISIBLE : GONE;
-        setTileVisibility(r.tileView, visibility);
-        r.tileView.onStateChanged(state);
+        handleSetTileVisibility(r.tileView, visibility);
+        r.tileView.handleStateChanged(state);
     }
 
     private void addTile(final QSTile<?> tile) {
@@ -283,9 +386,7 @@ public class QSPanel extends ViewGroup {
             @Override
             public void onStateChanged(QSTile.State state) {
                 Log.d(TAG, "callback: onStateChanged: ");
-                if (!r.openingDetail) {
-                    drawTile(r, state);
-                }
+                queueTileState(r, state);
             }
             @Override
             public void onShowDetail(boolean show) {
@@ -335,7 +436,7 @@ public class QSPanel extends ViewGroup {
             }
         };
         r.tileView.init(click, clickSecondary, longClick);
-        r.tile.setListening(mListening);
+        r.tile.setPanelListening(mTilesListening);
         callback.onStateChanged(r.tile.getState());
         r.tile.refreshState();
         mRecords.add(r);
@@ -604,13 +705,10 @@ public class QSPanel extends ViewGroup {
 
     private class H extends Handler {
         private static final int SHOW_DETAIL = 1;
-        private static final int SET_TILE_VISIBILITY = 2;
         @Override
         public void handleMessage(Message msg) {
             if (msg.what == SHOW_DETAIL) {
                 handleShowDetail((Record)msg.obj, msg.arg1 != 0);
-            } else if (msg.what == SET_TILE_VISIBILITY) {
-                handleSetTileVisibility((View)msg.obj, msg.arg1);
             }
         }
     }
@@ -629,6 +727,11 @@ public class QSPanel extends ViewGroup {
         public int col;
         public boolean scanState;
         public boolean openingDetail;
+        // Latest state received from the tile, not yet drawn. Guarded by mPendingStateLock.
+        QSTile.State pendingState;
+        boolean stateDirty;
+        // State the tile view currently shows. Only touched on the main thread.
+        QSTile.State appliedState;
     }
 
     private final AnimatorListenerAdapter mTeardownDetailWhenDone = new AnimatorListenerAdapter() {
@@ -662,7 +765,7 @@ public class QSPanel extends ViewGroup {
             if (mDetailRecord instanceof TileRecord) {
                 final TileRecord tileRecord = (TileRecord) mDetailRecord;
                 tileRecord.openingDetail = false;
-                drawTile(tileRecord, tileRecord.tile.getState());
+                queueTileState(tileRecord, tileRecord.tile.getState());
             }
         }
     };
@@ -25,6 +25,7 @@ import android.graphics.drawable.Drawable;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.SparseArray;
 import android.view.View;
@@ -48,14 +49,17 @@ import java.util.Objects;
 /**
  * Base quick-settings tile, extend this to create a new tile.
  *
- * State management done on a looper provided by the host.  Tiles should update state in
- * handleUpdateState.  Callbacks affecting state should use refreshState to trigger another
+ * State management done on a looper of its own provided by the host.  Tiles should update state
+ * in handleUpdateState.  Callbacks affecting state should use refreshState to trigger another
  * state update pass on tile looper.
  */
 public abstract class QSTile<TState extends State> implements Listenable {
     protected final String TAG = "QSTile." + getClass().getSimpleName();
     protected static final boolean DEBUG = Log.isLoggable("QSTile", Log.DEBUG);
 
+    /** Handler messages running longer than this are reported by the watchdog. */
+    private static final long SLOW_HANDLER_THRESHOLD = 500;
+
     protected final Host mHost;
     protected final Context mContext;
     protected final H mHandler;
@@ -66,6 +70,14 @@ public abstract class QSTile<TState extends State> implements Listenable {
     private TState mTmpState = newTileState();
     private boolean mAnnounceNextStateChange;
 
+    // Listening bookkeeping for the panel, only touched on the main thread.
+    private boolean mPanelListening;
+    private long mListeningSince;
+    private long mListeningTime;
+
+    private final HandlerLatencyHistogram mHandlerLatency = new HandlerLatencyHistogram();
+    private volatile String mRunningHandler;
+
     abstract protected TState newTileState();
     abstract protected void handleClick();
     abstract protected void handleUpdateState(TState state, Object arg);
@@ -82,7 +94,7 @@ public abstract class QSTile<TState extends State> implements Listenable {
     protected QSTile(Host host) {
         mHost = host;
         mContext = host.getContext();
-        mHandler = new H(host.getLooper());
+        mHandler = new H(host.createTileLooper(getClass().getSimpleName()));
     }
 
     public boolean supportsDualTargets() {
@@ -178,7 +190,53 @@ public abstract class QSTile<TState extends State> implements Listenable {
         // optional
     }
 
-    // call only on tile worker looper
+    /**
+     * Turns listening on or off on behalf of the panel. Redundant calls are ignored so the
+     * tile never registers its controller callbacks twice.
+     */
+    public final void setPanelListening(boolean listening) {
+        Log.d(TAG, "setPanelListening: ");
+        if (mPanelListening == listening) return;
+        mPanelListening = listening;
+        final long now = SystemClock.elapsedRealtime();
+        if (listening) {
+            mListeningSince = now;
+        } else {
+            mListeningTime += now - mListeningSince;
+        }
+        setListening(listening);
+    }
+
+    public boolean isPanelListening() {
+        return mPanelListening;
+    }
+
+    /** Returns the total time in ms this tile has spent listening, including the current run. */
+    public long getListeningTime() {
+        if (mPanelListening) {
+            return mListeningTime + SystemClock.elapsedRealtime() - mListeningSince;
+        }
+        return mListeningTime;
+    }
+
+    public HandlerLatencyHistogram getHandlerLatency() {
+        return mHandlerLatency;
+    }
+
+    /** Posted to the main thread while a handler message runs, fires if it runs too long. */
+    private final Runnable mSlowHandlerWatchdog = new Runnable() {
+        @Override
+        public void run() {
+            final String name = mRunningHandler;
+            final Thread thread = mHandler.getLooper().getThread();
+            if (name == null || thread == null) return;
+            final Throwable stack = new Throwable("Stack of " + thread);
+            stack.setStackTrace(thread.getStackTrace());
+            Log.w(TAG, name + " still running after " + SLOW_HANDLER_THRESHOLD + "ms", stack);
+        }
+    };
+
+    // call only on the tile looper
 
     private void handleSetCallback(Callback callback) {
         mCallback = callback;
@@ -276,40 +334,44 @@ public abstract class QSTile<TState extends State> implements Listenable {
         @Override
         public void handleMessage(Message msg) {
             String name = null;
+            final long start = SystemClock.uptimeMillis();
+            mUiHandler.postDelayed(mSlowHandlerWatchdog, SLOW_HANDLER_THRESHOLD);
             try {
                 if (msg.what == SET_CALLBACK) {
-                    name = "handleSetCallback";
+                    name = mRunningHandler = "handleSetCallback";
                     handleSetCallback((QSTile.Callback)msg.obj);
                 } else if (msg.what == CLICK) {
-                    name = "handleClick";
+                    name = mRunningHandler = "handleClick";
                     mAnnounceNextStateChange = true;
                     handleClick();
                 } else if (msg.what == SECONDARY_CLICK) {
-                    name = "handleSecondaryClick";
+                    name = mRunningHandler = "handleSecondaryClick";
                     handleSecondaryClick();
                 } else if (msg.what == LONG_CLICK) {
-                    name = "handleLongClick";
+                    name = mRunningHandler = "handleLongClick";
                     handleLongClick();
                 } else if (msg.what == REFRESH_STATE) {
-                    name = "handleRefreshState";
+                    name = mRunningHandler = "handleRefreshState";
                     handleRefreshState(msg.obj);
                 } else if (msg.what == SHOW_DETAIL) {
-                    name = "handleShowDetail";
+                    name = mRunningHandler = "handleShowDetail";
                     handleShowDetail(msg.arg1 != 0);
                 } else if (msg.what == USER_SWITCH) {
-                    name = "handleUserSwitch";
+                    name = mRunningHandler = "handleUserSwitch";
                     handleUserSwitch(msg.arg1);
                 } else if (msg.what == TOGGLE_STATE_CHANGED) {
-                    name = "handleToggleStateChanged";
+                    name = mRunningHandler = "handleToggleStateChanged";
                     handleToggleStateChanged(msg.arg1 != 0);
                 } else if (msg.what == SCAN_STATE_CHANGED) {
-                    name = "handleScanStateChanged";
+                    name = mRunningHandler = "handleScanStateChanged";
                     handleScanStateChanged(msg.arg1 != 0);
                 } else if (msg.what == DESTROY) {
-                    name = "handleDestroy";
+                    name = mRunningHandler = "handleDestroy";
+                    // The looper belongs to this tile alone, let it finish after this message
+                    getLooper().quitSafely();
                     handleDestroy();
                 } else if (msg.what == CLEAR_STATE) {
-                    name = "handleClearState";
+                    name = mRunningHandler = "handleClearState";
                     handleClearState();
                 } else {
                     throw new IllegalArgumentException("Unknown msg: " + msg.what);
@@ -318,6 +380,10 @@ public abstract class QSTile<TState extends State> implements Listenable {
                 final String error = "Error in " + name;
                 Log.w(TAG, error, t);
                 mHost.warn(error, t);
+            } finally {
+                mRunningHandler = null;
+                mUiHandler.removeCallbacks(mSlowHandlerWatchdog);
+                mHandlerLatency.record(name, SystemClock.uptimeMillis() - start);
             }
         }
     }
@@ -336,6 +402,7 @@ public abstract class QSTile<TState extends State> implements Listenable {
         void warn(String message, Throwable t);
         void collapsePanels();
         Looper getLooper();
+        Looper createTileLooper(String name);
         Context getContext();
         Collection<QSTile<?>> getTiles();
         void setCallback(Callback callback);
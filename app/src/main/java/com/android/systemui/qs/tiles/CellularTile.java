@@ -258,9 +258,22 @@ public class CellularTile extends QSTile<QSTile.SignalState> {
             final DataUsageDetailView v = (DataUsageDetailView) (convertView != null
                     ? convertView
                     : LayoutInflater.from(mContext).inflate(R.layout.data_usage, parent, false));
-            final DataUsageInfo info = mDataController.getDataUsageInfo();
-            if (info == null) return v;
-            v.bind(info);
+            // Show the last known usage right away, the query can take a while on long cycles.
+            final DataUsageInfo info = mDataController.getCachedDataUsageInfo();
+            if (info != null) {
+                v.bind(info);
+            }
+            mDataController.refreshDataUsageInfo(new MobileDataController.DataUsageCallback() {
+                @Override
+                public void onDataUsageInfo(final DataUsageInfo info) {
+                    v.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            v.bind(info);
+                        }
+                    });
+                }
+            });
             return v;
         }
 
@@ -20,6 +20,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
 import android.provider.Settings;
+import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
@@ -32,12 +34,14 @@ import com.android.systemui.qs.QSDetailItems.Item;
 import com.android.systemui.qs.QSTile;
 import com.android.systemui.qs.QSTileView;
 import com.android.systemui.qs.SignalTileView;
+import com.android.systemui.statusbar.policy.AccessPointControllerImpl;
 import com.android.systemui.statusbar.policy.NetworkController;
 import com.android.systemui.statusbar.policy.NetworkController.AccessPointController;
 import com.android.systemui.statusbar.policy.NetworkController.IconState;
 import com.android.systemui.statusbar.policy.SignalCallbackAdapter;
 
 import java.util.List;
+import java.util.Objects;
 
 /** Quick settings tile: Wifi **/
 public class WifiTile extends QSTile<QSTile.SignalState> {
@@ -254,6 +258,8 @@ public class WifiTile extends QSTile<QSTile.SignalState> {
 
         private QSDetailItems mItems;
         private AccessPoint[] mAccessPoints;
+        // Items last shown, by access point key, so unchanged rows are not rebound.
+        private ArrayMap<String, Item> mItemsByKey = new ArrayMap<>();
 
         @Override
         public int getTitle() {
@@ -286,6 +292,7 @@ public class WifiTile extends QSTile<QSTile.SignalState> {
         public View createDetailView(Context context, View convertView, ViewGroup parent) {
             if (DEBUG) Log.d(TAG, "createDetailView convertView=" + (convertView != null));
             mAccessPoints = null;
+            mItemsByKey.clear();
             mWifiController.scanForAccessPoints();
             fireScanStateChanged(true);
             mItems = QSDetailItems.convertOrInflate(context, convertView, parent);
@@ -337,21 +344,33 @@ public class WifiTile extends QSTile<QSTile.SignalState> {
         private void updateItems() {
             if (mItems == null) return;
             Item[] items = null;
+            final ArrayMap<String, Item> itemsByKey = new ArrayMap<>();
             if (mAccessPoints != null) {
                 items = new Item[mAccessPoints.length];
                 for (int i = 0; i < mAccessPoints.length; i++) {
                     final AccessPoint ap = mAccessPoints[i];
-                    final Item item = new Item();
+                    final String key = AccessPointControllerImpl.getKey(ap);
+                    final int icon = mWifiController.getIcon(ap);
+                    final CharSequence line1 = ap.getSsid();
+                    final CharSequence line2 = ap.isActive() ? ap.getSummary() : null;
+                    Item item = mItemsByKey.get(key);
+                    if (item == null || item.icon != icon || !TextUtils.equals(item.line1, line1)
+                            || !Objects.equals(item.line2, line2)) {
+                        item = new Item();
+                        item.icon = icon;
+                        item.line1 = line1;
+                        item.line2 = line2;
+                        // Security is part of the key, so a reused item keeps a valid overlay.
+                        item.overlay = ap.getSecurity() != AccessPoint.SECURITY_NONE
+                                ? mContext.getDrawable(R.drawable.qs_ic_wifi_lock)
+                                : null;
+                    }
                     item.tag = ap;
-                    item.icon = mWifiController.getIcon(ap);
-                    item.line1 = ap.getSsid();
-                    item.line2 = ap.isActive() ? ap.getSummary() : null;
-                    item.overlay = ap.getSecurity() != AccessPoint.SECURITY_NONE
-                            ? mContext.getDrawable(R.drawable.qs_ic_wifi_lock)
-                            : null;
                     items[i] = item;
+                    itemsByKey.put(key, item);
                 }
             }
+            mItemsByKey = itemsByKey;
             mItems.setItems(items);
         }
     }
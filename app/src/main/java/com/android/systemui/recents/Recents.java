@@ -22,6 +22,7 @@ import android.app.ActivityOptions;
 import android.app.ITaskStackListener;
 import android.content.ActivityNotFoundException;
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -263,6 +264,7 @@ public class Recents extends SystemUI
         TaskStackViewLayoutAlgorithm.initializeCurve();
         // Load the header bar layout
         reloadHeaderBarLayout();
+        mContext.registerComponentCallbacks(mTrimMemoryCallbacks);
 
         // When we start, preload the data associated with the previous recent tasks.
         // We can use a new plan since the caches will be the same.
@@ -310,6 +312,7 @@ public class Recents extends SystemUI
 
         try {
             startRecentsActivity();
+            prewarmTaskViews();
         } catch (ActivityNotFoundException e) {
             Console.logRawError("Failed to launch RecentAppsIntent", e);
         }
@@ -421,8 +424,41 @@ public class Recents extends SystemUI
                         topTaskHome.value);
             }
         }
+        prewarmTaskViews();
     }
 
+    /**
+     * Creates the task views for the next new Recents stack view while SystemUI is idle, unless
+     * they are already there.
+     */
+    private void prewarmTaskViews() {
+        Log.d(TAG, "prewarmTaskViews: ");
+        if (mDummyStackView != null) {
+            mDummyStackView.prewarmTaskViews();
+        }
+    }
+
+    /** Releases the task views created ahead of time when SystemUI is running low on memory. */
+    private final ComponentCallbacks2 mTrimMemoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            Log.d(TAG, "mTrimMemoryCallbacks: onTrimMemory: ");
+            if (mDummyStackView != null) {
+                mDummyStackView.onTrimMemory(level);
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            // Handled by onConfigurationChanged() of the SystemUI component
+        }
+    };
+
     @Override
     public void cancelPreloadingRecents() {
         Log.d(TAG, "cancelPreloadingRecents: ");
@@ -589,12 +625,22 @@ public class Recents extends SystemUI
 
         // Inflate the header bar layout so that we can rebind and draw it for the transition
         TaskStack stack = new TaskStack();
+        if (mDummyStackView != null) {
+            // The task views created for the previous configuration can't be used anymore
+            mDummyStackView.releasePooledTaskViews();
+        }
         mDummyStackView = new TaskStackView(mContext, stack);
+        // Create the task views for the next new Recents stack view once SystemUI is idle, so
+        // that they don't have to be inflated while Recents is entering
+        mDummyStackView.prewarmTaskViews();
         TaskStackViewLayoutAlgorithm algo = mDummyStackView.getStackAlgorithm();
         Rect taskStackBounds = new Rect(mTaskStackBounds);
         taskStackBounds.bottom -= mSystemInsets.bottom;
         algo.computeRects(mWindowRect.width(), mWindowRect.height(), taskStackBounds);
         Rect taskViewSize = algo.getUntransformedTaskViewSize();
+        // Decode the task thumbnails at the size that the task views will draw them
+        RecentsTaskLoader.getInstance().setThumbnailDecodeSize(taskViewSize.width(),
+                taskViewSize.height());
         int taskBarHeight = res.getDimensionPixelSize(R.dimen.recents_task_bar_height);
         synchronized (mHeaderBarLock) {
             mHeaderBar = (TaskViewHeader) mInflater.inflate(R.layout.recents_task_view_header, null,
@@ -974,6 +1020,14 @@ public class Recents extends SystemUI
                 Settings.Global.DEVICE_PROVISIONED, 0) != 0;
     }
 
+    /** Moves the task views that were created ahead of time into a new stack view. */
+    public static void consumePrewarmedTaskViews(TaskStackView stackView) {
+        Log.d(TAG, "consumePrewarmedTaskViews: ");
+        if (sInstance != null && sInstance.mDummyStackView != null) {
+            stackView.takePrewarmedTaskViews(sInstance.mDummyStackView);
+        }
+    }
+
     /**
      * Returns the preloaded load plan and invalidates it.
      */
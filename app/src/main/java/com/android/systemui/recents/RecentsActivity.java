@@ -50,6 +50,8 @@ import com.android.systemui.recents.views.RecentsView;
 import com.android.systemui.recents.views.SystemBarScrimViews;
 import com.android.systemui.recents.views.ViewAnimation;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 
@@ -216,6 +218,8 @@ public class RecentsActivity extends Activity implements RecentsView.RecentsView
         mConfig.launchedWithNoRecentTasks = !plan.hasTasks();
         if (!mConfig.launchedWithNoRecentTasks) {
             mRecentsView.setTaskStacks(stacks);
+            // The reused stack views update their existing stacks in place
+            stacks = mRecentsView.getTaskStacks();
         }
 
         // Create the home intent runnable
@@ -530,6 +534,18 @@ public class RecentsActivity extends Activity implements RecentsView.RecentsView
         if (loader != null) {
             loader.onTrimMemory(level);
         }
+        if (mRecentsView != null) {
+            mRecentsView.onTrimMemory(level);
+        }
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix); writer.println(TAG + ":");
+        if (mRecentsView != null) {
+            mRecentsView.dump(prefix + "  ", writer);
+        }
     }
 
     @Override
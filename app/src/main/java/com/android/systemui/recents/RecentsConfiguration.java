@@ -134,6 +134,7 @@ public class RecentsConfiguration {
     public boolean useHardwareLayers;
     public int altTabKeyDelay;
     public boolean fakeShadows;
+    public int maxPrewarmedTaskViews;
 
     /** Dev options and global settings */
     public boolean multiStackEnabled;
@@ -274,6 +275,7 @@ public class RecentsConfiguration {
         useHardwareLayers = res.getBoolean(R.bool.config_recents_use_hardware_layers);
         altTabKeyDelay = res.getInteger(R.integer.recents_alt_tab_key_delay);
         fakeShadows = res.getBoolean(R.bool.config_recents_fake_shadows);
+        maxPrewarmedTaskViews = res.getInteger(R.integer.config_recents_max_prewarmed_task_views);
         svelteLevel = res.getInteger(R.integer.recents_svelte_level);
     }
 
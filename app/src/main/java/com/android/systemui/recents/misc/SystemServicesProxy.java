@@ -333,6 +333,16 @@ public class SystemServicesProxy {
 
     /** Returns the top task thumbnail for the given task id */
     public Bitmap getTaskThumbnail(int taskId) {
+        Log.d(TAG, "getTaskThumbnail: ");
+        return getTaskThumbnail(taskId, 0, 0);
+    }
+
+    /**
+     * Returns the top task thumbnail for the given task id, decoded at no less than the given
+     * target size.  If the target size is not positive, the thumbnail is decoded at full
+     * resolution.
+     */
+    public Bitmap getTaskThumbnail(int taskId, int targetWidth, int targetHeight) {
         Log.d(TAG, "getTaskThumbnail: ");
         if (mAm == null) return null;
 
@@ -344,13 +354,16 @@ public class SystemServicesProxy {
             return thumbnail;
         }
 
-        Bitmap thumbnail = SystemServicesProxy.getThumbnail(mAm, taskId);
+        Bitmap thumbnail = SystemServicesProxy.getThumbnail(mAm, taskId, targetWidth,
+                targetHeight);
         if (thumbnail != null) {
-            thumbnail.setHasAlpha(false);
             // We use a dumb heuristic for now, if the thumbnail is purely transparent in the top
             // left pixel, then assume the whole thumbnail is transparent. Generally, proper
-            // screenshots are always composed onto a bitmap that has no alpha.
-            if (Color.alpha(thumbnail.getPixel(0, 0)) == 0) {
+            // screenshots are always composed onto a bitmap that has no alpha. Downsampled
+            // thumbnails are decoded without alpha, so there is nothing to check there.
+            boolean checkAlpha = thumbnail.getConfig() == Bitmap.Config.ARGB_8888;
+            thumbnail.setHasAlpha(false);
+            if (checkAlpha && Color.alpha(thumbnail.getPixel(0, 0)) == 0) {
                 mBgProtectionCanvas.setBitmap(thumbnail);
                 mBgProtectionCanvas.drawRect(0, 0, thumbnail.getWidth(), thumbnail.getHeight(),
                         mBgProtectionPaint);
@@ -366,14 +379,29 @@ public class SystemServicesProxy {
      */
     public static Bitmap getThumbnail(ActivityManager activityManager, int taskId) {
         Log.d(TAG, "getThumbnail: ");
+        return getThumbnail(activityManager, taskId, 0, 0);
+    }
+
+    /**
+     * Returns a task thumbnail from the activity manager, downsampled from the persisted
+     * screenshot so that it is no smaller than the given target size.  The full resolution
+     * screenshot is only decoded when no target size is given.
+     */
+    public static Bitmap getThumbnail(ActivityManager activityManager, int taskId,
+            int targetWidth, int targetHeight) {
+        Log.d(TAG, "getThumbnail: ");
         ActivityManager.TaskThumbnail taskThumbnail = activityManager.getTaskThumbnail(taskId);
         if (taskThumbnail == null) return null;
 
         Bitmap thumbnail = taskThumbnail.mainThumbnail;
         ParcelFileDescriptor descriptor = taskThumbnail.thumbnailFileDescriptor;
         if (thumbnail == null && descriptor != null) {
-            thumbnail = BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(),
-                    null, sBitmapOptions);
+            if (targetWidth > 0 && targetHeight > 0) {
+                thumbnail = decodeScaledThumbnail(descriptor, targetWidth, targetHeight);
+            } else {
+                thumbnail = BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(),
+                        null, sBitmapOptions);
+            }
         }
         if (descriptor != null) {
             try {
@@ -384,6 +412,46 @@ public class SystemServicesProxy {
         return thumbnail;
     }
 
+    /**
+     * Decodes the persisted thumbnail in the given descriptor so that it just covers the target
+     * size.  The decoder skips whole rows and columns with inSampleSize, and then scales the
+     * remainder down to the target width through the density, so we never allocate the full
+     * resolution bitmap.  Screenshots are opaque, so the result is decoded without alpha.
+     */
+    static Bitmap decodeScaledThumbnail(ParcelFileDescriptor descriptor, int targetWidth,
+            int targetHeight) {
+        Log.d(TAG, "decodeScaledThumbnail: ");
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        // NOTE: The decoder restores the descriptor offset, so we can decode from it again below
+        BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(), null, opts);
+        int srcWidth = opts.outWidth;
+        int srcHeight = opts.outHeight;
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while ((srcWidth / (sampleSize * 2)) >= targetWidth &&
+                (srcHeight / (sampleSize * 2)) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        opts.inJustDecodeBounds = false;
+        opts.inMutable = true;
+        opts.inSampleSize = sampleSize;
+        opts.inPreferredConfig = Bitmap.Config.RGB_565;
+        // Preserve the aspect ratio, so only scale down if both dimensions still fit the target
+        int sampledWidth = srcWidth / sampleSize;
+        int sampledHeight = srcHeight / sampleSize;
+        if (sampledWidth > targetWidth &&
+                ((long) sampledHeight * targetWidth) / sampledWidth >= targetHeight) {
+            opts.inScaled = true;
+            opts.inDensity = sampledWidth;
+            opts.inTargetDensity = targetWidth;
+        }
+        return BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(), null, opts);
+    }
+
     /** Moves a task to the front with the specified activity options. */
     public void moveTaskToFront(int taskId, ActivityOptions opts) {
         Log.d(TAG, "moveTaskToFront: ");
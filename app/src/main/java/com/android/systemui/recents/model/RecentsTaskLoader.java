@@ -99,6 +99,10 @@ class TaskResourceLoader implements Runnable {
     boolean mCancelled;
     boolean mWaitingOnLoadQueue;
 
+    // The size that thumbnails are decoded at, or zero to decode them at full resolution
+    int mThumbnailDecodeWidth;
+    int mThumbnailDecodeHeight;
+
     /** Constructor, creates a new loading thread that loads task resources in the background */
     public TaskResourceLoader(TaskResourceLoadQueue loadQueue, DrawableLruCache applicationIconCache,
                               BitmapLruCache thumbnailCache, Bitmap defaultThumbnail,
@@ -192,7 +196,8 @@ class TaskResourceLoader implements Runnable {
                         if (cachedThumbnail == null) {
                             if (config.svelteLevel < RecentsConfiguration.SVELTE_DISABLE_LOADING) {
                                 if (DEBUG) Log.d(TAG, "Loading thumbnail: " + t.key);
-                                cachedThumbnail = ssp.getTaskThumbnail(t.key.id);
+                                cachedThumbnail = ssp.getTaskThumbnail(t.key.id,
+                                        mThumbnailDecodeWidth, mThumbnailDecodeHeight);
                             }
                             if (cachedThumbnail == null) {
                                 cachedThumbnail = mDefaultThumbnail;
@@ -270,6 +275,8 @@ public class RecentsTaskLoader {
     int mMaxIconCacheSize;
     int mNumVisibleTasksLoaded;
     int mNumVisibleThumbnailsLoaded;
+    int mThumbnailDecodeWidth;
+    int mThumbnailDecodeHeight;
 
     BitmapDrawable mDefaultApplicationIcon;
     Bitmap mDefaultThumbnail;
@@ -435,7 +442,8 @@ public class RecentsTaskLoader {
         RecentsConfiguration config = RecentsConfiguration.getInstance();
         if (config.svelteLevel < RecentsConfiguration.SVELTE_DISABLE_LOADING && loadIfNotCached) {
             // Load the thumbnail from the system
-            thumbnail = ssp.getTaskThumbnail(taskKey.id);
+            thumbnail = ssp.getTaskThumbnail(taskKey.id, mThumbnailDecodeWidth,
+                    mThumbnailDecodeHeight);
             if (thumbnail != null) {
                 mThumbnailCache.put(taskKey, thumbnail);
                 return thumbnail;
@@ -445,6 +453,20 @@ public class RecentsTaskLoader {
         return null;
     }
 
+    /**
+     * Sets the size that task thumbnails are decoded at, which should be the untransformed size
+     * of the task views that draw them.  Thumbnails cached at a different size are evicted.
+     */
+    public void setThumbnailDecodeSize(int width, int height) {
+        Log.d(TAG, "setThumbnailDecodeSize: ");
+        if (width == mThumbnailDecodeWidth && height == mThumbnailDecodeHeight) return;
+        mThumbnailDecodeWidth = width;
+        mThumbnailDecodeHeight = height;
+        mLoader.mThumbnailDecodeWidth = width;
+        mLoader.mThumbnailDecodeHeight = height;
+        mThumbnailCache.evictAll();
+    }
+
     /** Returns the activity's primary color. */
     public int getActivityPrimaryColor(ActivityManager.TaskDescription td,
             RecentsConfiguration config) {
@@ -47,6 +47,18 @@ public class TaskGrouping {
         updateTaskIndices();
     }
 
+    /** Replaces the key of a task in this group with a newer key for the same task. */
+    void replaceTaskKey(Task.TaskKey oldKey, Task.TaskKey newKey) {
+        Log.d(TAG, "replaceTaskKey: ");
+        int index = mTaskKeys.indexOf(oldKey);
+        if (index < 0) return;
+        mTaskKeys.set(index, newKey);
+        if (newKey.lastActiveTime > latestActiveTimeInGroup) {
+            latestActiveTimeInGroup = newKey.lastActiveTime;
+        }
+        updateTaskIndices();
+    }
+
     /** Returns the key of the next task in the group. */
     public Task.TaskKey getNextTaskInGroup(Task t) {
         Log.d(TAG, "getNextTaskInGroup: ");
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 
@@ -182,6 +183,9 @@ public class TaskStack {
         public void onStackTaskAdded(TaskStack stack, Task t);
         /* Notifies when a task has been removed from the stack */
         public void onStackTaskRemoved(TaskStack stack, Task removedTask, Task newFrontMostTask);
+        /* Notifies when a task has been removed from the stack because it is no longer a recent
+         * task, as opposed to being dismissed by the user */
+        public void onStackTaskPurged(TaskStack stack, Task removedTask);
         /* Notifies when all task has been removed from the stack */
         public void onStackAllTasksRemoved(TaskStack stack, ArrayList<Task> removedTasks);
         /** Notifies when the stack was filtered */
@@ -308,6 +312,119 @@ public class TaskStack {
         }
     }
 
+    /**
+     * Updates this stack in place to match the tasks of a newer load plan.  Tasks that are still
+     * recent keep their existing Task instance and take the new metadata, so that any bound views
+     * and cached data stay valid, and only the affiliation groups of added, removed or reordered
+     * tasks are rebuilt.
+     */
+    public void updateTasks(List<Task> tasks, RecentsConfiguration config) {
+        Log.d(TAG, "updateTasks: ");
+        ArrayList<Task> prevTaskList = mTaskList.mTasks;
+        int prevTaskCount = prevTaskList.size();
+        HashMap<Task.TaskKey, Task> prevTasks = new HashMap<Task.TaskKey, Task>(prevTaskCount);
+        for (int i = 0; i < prevTaskCount; i++) {
+            Task t = prevTaskList.get(i);
+            prevTasks.put(t.key, t);
+        }
+
+        // Match the new tasks against the existing ones, keeping track of the affiliations that
+        // have to be regrouped
+        int taskCount = tasks.size();
+        ArrayList<Task> newTaskList = new ArrayList<Task>(taskCount);
+        ArrayList<Task> addedTasks = new ArrayList<Task>();
+        HashSet<Integer> dirtyAffiliations = new HashSet<Integer>();
+        HashMap<Task.TaskKey, Task> tasksMap = new HashMap<Task.TaskKey, Task>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            Task t = tasks.get(i);
+            Task prevTask = prevTasks.remove(t.key);
+            if (prevTask == null) {
+                // The task may still be grouped in the stack of the load plan it came from
+                t.setGroup(null);
+                addedTasks.add(t);
+                dirtyAffiliations.add(getAffiliation(t));
+                prevTask = t;
+            } else {
+                int prevAffiliation = getAffiliation(prevTask);
+                if (prevAffiliation != getAffiliation(t) ||
+                        prevTask.key.lastActiveTime != t.key.lastActiveTime) {
+                    // The task has either moved to another group or within its group
+                    dirtyAffiliations.add(prevAffiliation);
+                    dirtyAffiliations.add(getAffiliation(t));
+                }
+                // Take the new key, so that the caches can tell that the task has been active
+                // since its data was loaded, and swap it into the group holding the old key
+                if (prevTask.group != null) {
+                    prevTask.group.replaceTaskKey(prevTask.key, t.key);
+                }
+                prevTask.copyFrom(t);
+                prevTask.icon = t.icon;
+                prevTask.iconFilename = t.iconFilename;
+                prevTask.isLaunchTarget = false;
+            }
+            newTaskList.add(prevTask);
+            tasksMap.put(prevTask.key, prevTask);
+        }
+
+        // Whatever is left has been removed
+        ArrayList<Task> removedTasks = new ArrayList<Task>(prevTasks.values());
+        int removedTaskCount = removedTasks.size();
+        for (int i = 0; i < removedTaskCount; i++) {
+            Task t = removedTasks.get(i);
+            dirtyAffiliations.add(getAffiliation(t));
+            t.lockToThisTask = false;
+        }
+
+        if (Constants.DebugFlags.App.EnableSimulatedTaskGroups) {
+            // The simulated groups depend on the whole stack, so just rebuild them
+            for (int i = 0; i < prevTaskCount; i++) {
+                prevTaskList.get(i).setGroup(null);
+            }
+            mGroups.clear();
+            mAffinitiesGroups.clear();
+            mTaskList.set(newTaskList);
+            createAffiliatedGroupings(config);
+        } else {
+            // Detach the tasks in the dirty groups, and then rebuild those groups in stack order
+            for (int i = 0; i < prevTaskCount; i++) {
+                Task t = prevTaskList.get(i);
+                if (t.group != null && dirtyAffiliations.contains(t.group.affiliation)) {
+                    t.setGroup(null);
+                }
+            }
+            for (Integer affiliation : dirtyAffiliations) {
+                TaskGrouping group = mAffinitiesGroups.get(affiliation);
+                if (group != null) {
+                    removeGroup(group);
+                }
+            }
+            for (int i = 0; i < taskCount; i++) {
+                Task t = newTaskList.get(i);
+                if (t.group == null) {
+                    int affiliation = getAffiliation(t);
+                    TaskGrouping group = getGroupWithAffiliation(affiliation);
+                    if (group == null) {
+                        group = new TaskGrouping(affiliation);
+                        addGroup(group);
+                    }
+                    group.addTask(t);
+                }
+            }
+            mTaskList.set(newTaskList);
+            updateAffiliationColors(tasksMap, config);
+        }
+
+        if (mCb != null) {
+            for (int i = 0; i < removedTaskCount; i++) {
+                mCb.onStackTaskPurged(this, removedTasks.get(i));
+            }
+            int addedTaskCount = addedTasks.size();
+            for (int i = 0; i < addedTaskCount; i++) {
+                mCb.onStackTaskAdded(this, addedTasks.get(i));
+            }
+        }
+    }
+
     /** Gets the front task */
     public Task getFrontMostTask() {
         Log.d(TAG, "getFrontMostTask: ");
@@ -412,6 +529,11 @@ public class TaskStack {
         mAffinitiesGroups.remove(group.affiliation);
     }
 
+    /** Returns the affiliation of the group that the specified task belongs in. */
+    static int getAffiliation(Task t) {
+        return t.taskAffiliation > 0 ? t.taskAffiliation : IndividualTaskIdOffset + t.key.id;
+    }
+
     /** Returns the group with the specified affiliation. */
     public TaskGrouping getGroupWithAffiliation(int affiliation) {
         Log.d(TAG, "getGroupWithAffiliation: ");
@@ -495,8 +617,7 @@ public class TaskStack {
             for (int i = 0; i < taskCount; i++) {
                 Task t = tasks.get(i);
                 TaskGrouping group;
-                int affiliation = t.taskAffiliation > 0 ? t.taskAffiliation :
-                        IndividualTaskIdOffset + t.key.id;
+                int affiliation = getAffiliation(t);
                 if (mAffinitiesGroups.containsKey(affiliation)) {
                     group = getGroupWithAffiliation(affiliation);
                 } else {
@@ -506,24 +627,30 @@ public class TaskStack {
                 group.addTask(t);
                 tasksMap.put(t.key, t);
             }
-            // Update the task colors for each of the groups
-            float minAlpha = config.taskBarViewAffiliationColorMinAlpha;
-            int taskGroupCount = mGroups.size();
-            for (int i = 0; i < taskGroupCount; i++) {
-                TaskGrouping group = mGroups.get(i);
-                taskCount = group.getTaskCount();
-                // Ignore the groups that only have one task
-                if (taskCount <= 1) continue;
-                // Calculate the group color distribution
-                int affiliationColor = tasksMap.get(group.mTaskKeys.get(0)).taskAffiliationColor;
-                float alphaStep = (1f - minAlpha) / taskCount;
-                float alpha = 1f;
-                for (int j = 0; j < taskCount; j++) {
-                    Task t = tasksMap.get(group.mTaskKeys.get(j));
-                    t.colorPrimary = Utilities.getColorWithOverlay(affiliationColor, Color.WHITE,
-                            alpha);
-                    alpha -= alphaStep;
-                }
+            updateAffiliationColors(tasksMap, config);
+        }
+    }
+
+    /** Updates the task colors for each of the groups. */
+    private void updateAffiliationColors(HashMap<Task.TaskKey, Task> tasksMap,
+            RecentsConfiguration config) {
+        Log.d(TAG, "updateAffiliationColors: ");
+        float minAlpha = config.taskBarViewAffiliationColorMinAlpha;
+        int taskGroupCount = mGroups.size();
+        for (int i = 0; i < taskGroupCount; i++) {
+            TaskGrouping group = mGroups.get(i);
+            int taskCount = group.getTaskCount();
+            // Ignore the groups that only have one task
+            if (taskCount <= 1) continue;
+            // Calculate the group color distribution
+            int affiliationColor = tasksMap.get(group.mTaskKeys.get(0)).taskAffiliationColor;
+            float alphaStep = (1f - minAlpha) / taskCount;
+            float alpha = 1f;
+            for (int j = 0; j < taskCount; j++) {
+                Task t = tasksMap.get(group.mTaskKeys.get(j));
+                t.colorPrimary = Utilities.getColorWithOverlay(affiliationColor, Color.WHITE,
+                        alpha);
+                alpha -= alphaStep;
             }
         }
     }
@@ -46,6 +46,68 @@ class FakeShadowDrawable extends Drawable {
 
     final static float SHADOW_MULTIPLIER = 1.5f;
 
+    /**
+     * The corner path and the shaders of a shadow.  These only depend on the corner radius, the
+     * shadow size and the shadow colors, and not on the bounds, so they are built once and shared
+     * by all the task views with the same parameters.
+     */
+    static class ShadowComponents {
+        final float cornerRadius;
+        final float shadowSize;
+        final int shadowStartColor;
+        final int shadowEndColor;
+        final Path cornerShadowPath;
+        final Shader cornerShadowShader;
+        final Shader edgeShadowShader;
+
+        ShadowComponents(float cornerRadius, float shadowSize, int shadowStartColor,
+                int shadowEndColor) {
+            this.cornerRadius = cornerRadius;
+            this.shadowSize = shadowSize;
+            this.shadowStartColor = shadowStartColor;
+            this.shadowEndColor = shadowEndColor;
+
+            RectF innerBounds = new RectF(-cornerRadius, -cornerRadius, cornerRadius, cornerRadius);
+            RectF outerBounds = new RectF(innerBounds);
+            outerBounds.inset(-shadowSize, -shadowSize);
+
+            cornerShadowPath = new Path();
+            cornerShadowPath.setFillType(Path.FillType.EVEN_ODD);
+            cornerShadowPath.moveTo(-cornerRadius, 0);
+            cornerShadowPath.rLineTo(-shadowSize, 0);
+            // outer arc
+            cornerShadowPath.arcTo(outerBounds, 180f, 90f, false);
+            // inner arc
+            cornerShadowPath.arcTo(innerBounds, 270f, -90f, false);
+            cornerShadowPath.close();
+
+            float startRatio = cornerRadius / (cornerRadius + shadowSize);
+            cornerShadowShader = new RadialGradient(0, 0, cornerRadius + shadowSize,
+                    new int[]{shadowStartColor, shadowStartColor, shadowEndColor},
+                    new float[]{0f, startRatio, 1f}
+                    , Shader.TileMode.CLAMP);
+
+            // we offset the content shadowSize/2 pixels up to make it more realistic.
+            // this is why edge shadow shader has some extra space
+            // When drawing bottom edge shadow, we use that extra space.
+            edgeShadowShader = new LinearGradient(0, -cornerRadius + shadowSize, 0,
+                    -cornerRadius - shadowSize,
+                    new int[]{shadowStartColor, shadowStartColor, shadowEndColor},
+                    new float[]{0f, .5f, 1f}, Shader.TileMode.CLAMP);
+        }
+
+        boolean matches(float cornerRadius, float shadowSize, int shadowStartColor,
+                int shadowEndColor) {
+            return this.cornerRadius == cornerRadius && this.shadowSize == shadowSize &&
+                    this.shadowStartColor == shadowStartColor &&
+                    this.shadowEndColor == shadowEndColor;
+        }
+    }
+
+    // The most recently built shadow components.  All the task views share the same parameters,
+    // which only change with the configuration, so we only need to keep the latest ones around.
+    static ShadowComponents sShadowComponents;
+
     final float mInsetShadow; // extra shadow to avoid gaps between card and shadow
 
     Paint mCornerShadowPaint;
@@ -56,7 +118,7 @@ class FakeShadowDrawable extends Drawable {
 
     float mCornerRadius;
 
-    Path mCornerShadowPath;
+    ShadowComponents mShadowComponents;
 
     // updated value with inset
     float mMaxShadowSize;
@@ -70,7 +132,9 @@ class FakeShadowDrawable extends Drawable {
     // actual value set by developer
     float mRawShadowSize;
 
+    // Whether the card bounds and the shadow components need to be updated respectively
     private boolean mDirty = true;
+    private boolean mShadowComponentsDirty = true;
 
     private final int mShadowStartColor;
 
@@ -132,6 +196,7 @@ class FakeShadowDrawable extends Drawable {
         mShadowSize = shadowSize * SHADOW_MULTIPLIER + mInsetShadow;
         mMaxShadowSize = maxShadowSize + mInsetShadow;
         mDirty = true;
+        mShadowComponentsDirty = true;
         invalidateSelf();
     }
 
@@ -182,6 +247,10 @@ class FakeShadowDrawable extends Drawable {
     @Override
     public void draw(Canvas canvas) {
         Log.d(TAG, "draw: ");
+        if (mShadowComponentsDirty) {
+            buildShadowCorners();
+            mShadowComponentsDirty = false;
+        }
         if (mDirty) {
             buildComponents(getBounds());
             mDirty = false;
@@ -197,10 +266,11 @@ class FakeShadowDrawable extends Drawable {
         final float inset = mCornerRadius + mInsetShadow + mRawShadowSize / 2;
         final boolean drawHorizontalEdges = mCardBounds.width() - 2 * inset > 0;
         final boolean drawVerticalEdges = mCardBounds.height() - 2 * inset > 0;
+        final Path cornerShadowPath = mShadowComponents.cornerShadowPath;
         // LT
         int saved = canvas.save();
         canvas.translate(mCardBounds.left + inset, mCardBounds.top + inset);
-        canvas.drawPath(mCornerShadowPath, mCornerShadowPaint);
+        canvas.drawPath(cornerShadowPath, mCornerShadowPaint);
         if (drawHorizontalEdges) {
             canvas.drawRect(0, edgeShadowTop,
                     mCardBounds.width() - 2 * inset, -mCornerRadius,
@@ -211,7 +281,7 @@ class FakeShadowDrawable extends Drawable {
         saved = canvas.save();
         canvas.translate(mCardBounds.right - inset, mCardBounds.bottom - inset);
         canvas.rotate(180f);
-        canvas.drawPath(mCornerShadowPath, mCornerShadowPaint);
+        canvas.drawPath(cornerShadowPath, mCornerShadowPaint);
         if (drawHorizontalEdges) {
             canvas.drawRect(0, edgeShadowTop,
                     mCardBounds.width() - 2 * inset, -mCornerRadius + mShadowSize,
@@ -222,7 +292,7 @@ class FakeShadowDrawable extends Drawable {
         saved = canvas.save();
         canvas.translate(mCardBounds.left + inset, mCardBounds.bottom - inset);
         canvas.rotate(270f);
-        canvas.drawPath(mCornerShadowPath, mCornerShadowPaint);
+        canvas.drawPath(cornerShadowPath, mCornerShadowPaint);
         if (drawVerticalEdges) {
             canvas.drawRect(0, edgeShadowTop,
                     mCardBounds.height() - 2 * inset, -mCornerRadius, mEdgeShadowPaint);
@@ -232,7 +302,7 @@ class FakeShadowDrawable extends Drawable {
         saved = canvas.save();
         canvas.translate(mCardBounds.right - inset, mCardBounds.top + inset);
         canvas.rotate(90f);
-        canvas.drawPath(mCornerShadowPath, mCornerShadowPaint);
+        canvas.drawPath(cornerShadowPath, mCornerShadowPaint);
         if (drawVerticalEdges) {
             canvas.drawRect(0, edgeShadowTop,
                     mCardBounds.height() - 2 * inset, -mCornerRadius, mEdgeShadowPaint);
@@ -242,37 +312,16 @@ class FakeShadowDrawable extends Drawable {
 
     private void buildShadowCorners() {
         Log.d(TAG, "buildShadowCorners: ");
-        RectF innerBounds = new RectF(-mCornerRadius, -mCornerRadius, mCornerRadius, mCornerRadius);
-        RectF outerBounds = new RectF(innerBounds);
-        outerBounds.inset(-mShadowSize, -mShadowSize);
-
-        if (mCornerShadowPath == null) {
-            mCornerShadowPath = new Path();
-        } else {
-            mCornerShadowPath.reset();
+        ShadowComponents components = sShadowComponents;
+        if (components == null || !components.matches(mCornerRadius, mShadowSize,
+                mShadowStartColor, mShadowEndColor)) {
+            components = new ShadowComponents(mCornerRadius, mShadowSize, mShadowStartColor,
+                    mShadowEndColor);
+            sShadowComponents = components;
         }
-        mCornerShadowPath.setFillType(Path.FillType.EVEN_ODD);
-        mCornerShadowPath.moveTo(-mCornerRadius, 0);
-        mCornerShadowPath.rLineTo(-mShadowSize, 0);
-        // outer arc
-        mCornerShadowPath.arcTo(outerBounds, 180f, 90f, false);
-        // inner arc
-        mCornerShadowPath.arcTo(innerBounds, 270f, -90f, false);
-        mCornerShadowPath.close();
-
-        float startRatio = mCornerRadius / (mCornerRadius + mShadowSize);
-        mCornerShadowPaint.setShader(new RadialGradient(0, 0, mCornerRadius + mShadowSize,
-                new int[]{mShadowStartColor, mShadowStartColor, mShadowEndColor},
-                new float[]{0f, startRatio, 1f}
-                , Shader.TileMode.CLAMP));
-
-        // we offset the content shadowSize/2 pixels up to make it more realistic.
-        // this is why edge shadow shader has some extra space
-        // When drawing bottom edge shadow, we use that extra space.
-        mEdgeShadowPaint.setShader(new LinearGradient(0, -mCornerRadius + mShadowSize, 0,
-                -mCornerRadius - mShadowSize,
-                new int[]{mShadowStartColor, mShadowStartColor, mShadowEndColor},
-                new float[]{0f, .5f, 1f}, Shader.TileMode.CLAMP));
+        mShadowComponents = components;
+        mCornerShadowPaint.setShader(components.cornerShadowShader);
+        mEdgeShadowPaint.setShader(components.edgeShadowShader);
     }
 
     private void buildComponents(Rect bounds) {
@@ -283,7 +332,6 @@ class FakeShadowDrawable extends Drawable {
         final float verticalOffset = mMaxShadowSize * SHADOW_MULTIPLIER;
         mCardBounds.set(bounds.left + mMaxShadowSize, bounds.top + verticalOffset,
                 bounds.right - mMaxShadowSize, bounds.bottom - verticalOffset);
-        buildShadowCorners();
     }
 
     float getMinWidth() {
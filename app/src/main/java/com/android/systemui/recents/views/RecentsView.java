@@ -40,6 +40,7 @@ import android.widget.FrameLayout;
 import com.android.internal.logging.MetricsLogger;
 import com.android.systemui.R;
 import com.android.systemui.recents.Constants;
+import com.android.systemui.recents.Recents;
 import com.android.systemui.recents.RecentsAppWidgetHostView;
 import com.android.systemui.recents.RecentsConfiguration;
 import com.android.systemui.recents.misc.SystemServicesProxy;
@@ -48,6 +49,7 @@ import com.android.systemui.recents.model.RecentsTaskLoader;
 import com.android.systemui.recents.model.Task;
 import com.android.systemui.recents.model.TaskStack;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -126,19 +128,30 @@ public class RecentsView extends FrameLayout implements TaskStackView.TaskStackV
             removeView(mTaskStackViews.remove(i));
         }
 
-        // Update the stack views that we are keeping
+        // Update the stack views that we are keeping, updating their stacks in place where we can
+        ArrayList<TaskStack> viewStacks = new ArrayList<TaskStack>(numStacks);
         for (int i = 0; i < numTaskStacksToKeep; i++) {
             TaskStackView tsv = mTaskStackViews.get(i);
-            // If onRecentsHidden is not triggered, we need to the stack view again here
-            tsv.reset();
-            tsv.setStack(stacks.get(i));
+            TaskStack stack = stacks.get(i);
+            if (tsv.getStack().id == stack.id) {
+                tsv.updateStack(stack);
+            } else {
+                // If onRecentsHidden is not triggered, we need to the stack view again here
+                tsv.reset();
+                tsv.setStack(stack);
+            }
+            viewStacks.add(tsv.getStack());
         }
 
         // Add remaining/recreate stack views
-        mStacks = stacks;
+        for (int i = numTaskStacksToKeep; i < numStacks; i++) {
+            viewStacks.add(stacks.get(i));
+        }
+        mStacks = viewStacks;
         for (int i = mTaskStackViews.size(); i < numStacks; i++) {
             TaskStack stack = stacks.get(i);
             TaskStackView stackView = new TaskStackView(getContext(), stack);
+            Recents.consumePrewarmedTaskViews(stackView);
             stackView.setCallbacks(this);
             addView(stackView);
             mTaskStackViews.add(stackView);
@@ -156,6 +169,12 @@ public class RecentsView extends FrameLayout implements TaskStackView.TaskStackV
         requestLayout();
     }
 
+    /** Returns the task stacks that are currently shown, which may differ from the ones set. */
+    public ArrayList<TaskStack> getTaskStacks() {
+        Log.d(TAG, "getTaskStacks: ");
+        return mStacks;
+    }
+
     /** Gets the list of task views */
     List<TaskStackView> getTaskStackViews() {
         Log.d(TAG, "getTaskStackViews: ");
@@ -684,6 +703,26 @@ public class RecentsView extends FrameLayout implements TaskStackView.TaskStackV
         MetricsLogger.count(getContext(), "overview_task_all_dismissed", 1);
     }
 
+    /** Trims the memory used by the task stack views. */
+    public void onTrimMemory(int level) {
+        Log.d(TAG, "onTrimMemory: ");
+        List<TaskStackView> stackViews = getTaskStackViews();
+        int stackCount = stackViews.size();
+        for (int i = 0; i < stackCount; i++) {
+            stackViews.get(i).onTrimMemory(level);
+        }
+    }
+
+    /** Dumps the state of the task stack views. */
+    public void dump(String prefix, PrintWriter pw) {
+        Log.d(TAG, "dump: ");
+        List<TaskStackView> stackViews = getTaskStackViews();
+        int stackCount = stackViews.size();
+        for (int i = 0; i < stackCount; i++) {
+            stackViews.get(i).dump(prefix, pw);
+        }
+    }
+
     /** Final callback after Recents is finally hidden. */
     public void onRecentsHidden() {
         // Notify each task stack view
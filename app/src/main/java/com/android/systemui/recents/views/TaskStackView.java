@@ -17,6 +17,7 @@
 package com.android.systemui.recents.views;
 
 import android.animation.ValueAnimator;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.Context;
 import android.graphics.Canvas;
@@ -44,6 +45,8 @@ import com.android.systemui.recents.model.Task;
 import com.android.systemui.recents.model.TaskStack;
 import com.android.systemui.statusbar.DismissView;
 
+import java.io.PrintWriter;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -159,6 +162,39 @@ public class TaskStackView extends FrameLayout implements TaskStack.TaskStackCal
         requestLayout();
     }
 
+    /**
+     * Updates the current task stack in place from the stack of a newer load plan, so that the
+     * existing tasks and their cached data are kept.
+     */
+    void updateStack(TaskStack stack) {
+        Log.d(TAG, "updateStack: ");
+        // If onRecentsHidden is not triggered, we need to reset the view state again here
+        resetViewState();
+        mStack.setCallbacks(this);
+        mStack.setBounds(stack.stackBounds, stack.displayBounds);
+        // Views of removed tasks are returned to the pool and added tasks are picked up through
+        // the stack callbacks
+        mStack.updateTasks(stack.getTasks(), mConfig);
+
+        // Keep the views of the remaining tasks, unless their task has moved past another view,
+        // and reload their data in case the task has been active since it was loaded
+        RecentsTaskLoader loader = RecentsTaskLoader.getInstance();
+        List<TaskView> taskViews = getTaskViews();
+        int prevTaskIndex = Integer.MAX_VALUE;
+        for (int i = taskViews.size() - 1; i >= 0; i--) {
+            TaskView tv = taskViews.get(i);
+            int taskIndex = mStack.indexOfTask(tv.getTask());
+            if (taskIndex < 0 || taskIndex >= prevTaskIndex) {
+                mViewPool.returnViewToPool(tv);
+            } else {
+                prevTaskIndex = taskIndex;
+                loader.loadTaskData(tv.getTask());
+            }
+        }
+        // Layout again with the updated stack
+        requestLayout();
+    }
+
     /** Returns the task stack. */
     TaskStack getStack() {
         Log.d(TAG, "getStack: ");
@@ -194,8 +230,15 @@ public class TaskStackView extends FrameLayout implements TaskStack.TaskStackCal
     /** Resets this TaskStackView for reuse. */
     void reset() {
         Log.d(TAG, "reset: ");
-        // Reset the focused task
-        resetFocusedTask();
+        resetViews();
+        // Reset the stack state
+        mStack.reset();
+    }
+
+    /** Resets the views of this TaskStackView, but keeps the current stack. */
+    void resetViews() {
+        Log.d(TAG, "resetViews: ");
+        resetViewState();
 
         // Return all the views to the pool
         List<TaskView> taskViews = getTaskViews();
@@ -214,9 +257,27 @@ public class TaskStackView extends FrameLayout implements TaskStack.TaskStackCal
                 }
             }
         }
+    }
 
-        // Reset the stack state
-        mStack.reset();
+    /**
+     * Resets the state of this TaskStackView and of its task views for the next time Recents is
+     * shown, but keeps the task views bound to their tasks.
+     */
+    void resetViewState() {
+        Log.d(TAG, "resetViewState: ");
+        // Reset the focused task
+        resetFocusedTask();
+
+        List<TaskView> taskViews = getTaskViews();
+        int taskViewCount = taskViews.size();
+        for (int i = 0; i < taskViewCount; i++) {
+            TaskView tv = taskViews.get(i);
+            tv.resetViewProperties();
+            tv.resetNoUserInteractionState();
+            tv.setClipViewInStack(false);
+        }
+
+        // Reset the view state
         mStackViewsDirty = true;
         mStackViewsClipDirty = true;
         mAwaitingFirstLayout = true;
@@ -304,7 +365,7 @@ public class TaskStackView extends FrameLayout implements TaskStack.TaskStackCal
         // Update the stack transforms
         TaskViewTransform prevTransform = null;
         for (int i = taskCount - 1; i >= 0; i--) {
-            TaskViewTransform transform = mLayoutAlgorithm.getStackTransform(tasks.get(i),
+            TaskViewTransform transform = mLayoutAlgorithm.getStackTransform(tasks.get(i), i,
                     stackScroll, taskTransforms.get(i), prevTransform);
             if (transform.visible) {
                 if (frontMostVisibleIndex < 0) {
@@ -504,7 +565,7 @@ public class TaskStackView extends FrameLayout implements TaskStack.TaskStackCal
             boolean launchedFromHome) {
         Log.d(TAG, "updateMinMaxScroll: ");
         // Compute the min and max scroll values
-        mLayoutAlgorithm.computeMinMaxScroll(mStack.getTasks(), launchedWithAltTab, launchedFromHome);
+        mLayoutAlgorithm.computeMinMaxScroll(mStack, launchedWithAltTab, launchedFromHome);
 
         // Debug logging
         if (boundScrollToNewMinMax) {
@@ -965,7 +1026,6 @@ public class TaskStackView extends FrameLayout implements TaskStack.TaskStackCal
                     mStartEnterAnimationCompleted = true;
                     // Poke the dozer to restart the trigger after the animation completes
                     mUIDozeTrigger.poke();
-
                     RecentsTaskLoader loader = RecentsTaskLoader.getInstance();
                     SystemServicesProxy ssp = loader.getSystemServicesProxy();
                     List<TaskView> taskViews = getTaskViews();
@@ -1122,10 +1182,55 @@ public class TaskStackView extends FrameLayout implements TaskStack.TaskStackCal
         }
     }
 
+    /** Releases the pooled task views when we are running low on memory. */
+    public void onTrimMemory(int level) {
+        Log.d(TAG, "onTrimMemory: ");
+        switch (level) {
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+            case ComponentCallbacks2.TRIM_MEMORY_MODERATE:
+            case ComponentCallbacks2.TRIM_MEMORY_COMPLETE:
+                // The views are created again on the next preload or show, see Recents
+                mViewPool.trim();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** Creates task views ahead of time, one each time the main thread goes idle. */
+    public void prewarmTaskViews() {
+        Log.d(TAG, "prewarmTaskViews: ");
+        mViewPool.prewarm(mConfig.maxPrewarmedTaskViews);
+    }
+
+    /** Takes the task views that another stack view created ahead of time. */
+    public void takePrewarmedTaskViews(TaskStackView stackView) {
+        Log.d(TAG, "takePrewarmedTaskViews: ");
+        mViewPool.takePrewarmedViews(stackView.mViewPool);
+    }
+
+    /** Releases the task views in the pool, and stops creating them ahead of time. */
+    public void releasePooledTaskViews() {
+        Log.d(TAG, "releasePooledTaskViews: ");
+        mViewPool.trim();
+    }
+
+    /** Dumps the state of this stack view. */
+    void dump(String prefix, PrintWriter pw) {
+        Log.d(TAG, "dump: ");
+        pw.print(prefix); pw.print(TAG); pw.print(" stack="); pw.print(mStack.id);
+        pw.print(" tasks="); pw.print(mStack.getTaskCount());
+        pw.print(" taskViews="); pw.println(getTaskViews().size());
+        mViewPool.dump(prefix + "  ", pw);
+    }
+
     /** Final callback after Recents is finally hidden. */
     void onRecentsHidden() {
         Log.d(TAG, "onRecentsHidden: ");
-        reset();
+        // Keep the stack and its task views, so that they can be updated in place the next time
+        // Recents is shown
+        resetViewState();
     }
 
     public boolean isTransformedTouchPointInView(float x, float y, View child) {
@@ -1229,6 +1334,17 @@ public class TaskStackView extends FrameLayout implements TaskStack.TaskStackCal
         mCb.onTaskViewDismissed(removedTask);
     }
 
+    @Override
+    public void onStackTaskPurged(TaskStack stack, Task removedTask) {
+        Log.d(TAG, "onStackTaskPurged: ");
+        // Return the view associated with this task, the task is already gone from the stack
+        TaskView tv = getChildViewForTask(removedTask);
+        if (tv != null) {
+            mViewPool.returnViewToPool(tv);
+        }
+        requestSynchronizeStackViewsWithModel();
+    }
+
     @Override
     public void onStackAllTasksRemoved(TaskStack stack, final ArrayList<Task> removedTasks) {
         Log.d(TAG, "onStackAllTasksRemoved: ");
@@ -1344,6 +1460,13 @@ public class TaskStackView extends FrameLayout implements TaskStack.TaskStackCal
         tv.setClipViewInStack(false);
     }
 
+    @Override
+    public void prepareViewToBeReleased(TaskView tv) {
+        Log.d(TAG, "prepareViewToBeReleased: ");
+        // Pooled views are only detached, so finish removing them from the hierarchy
+        removeDetachedView(tv, false);
+    }
+
     @Override
     public void prepareViewToLeavePool(TaskView tv, Task task, boolean isNewView) {
         Log.d(TAG, "prepareViewToLeavePool: ");
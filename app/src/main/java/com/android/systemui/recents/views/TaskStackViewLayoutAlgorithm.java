@@ -23,9 +23,9 @@ import com.android.systemui.recents.Constants;
 import com.android.systemui.recents.RecentsConfiguration;
 import com.android.systemui.recents.misc.Utilities;
 import com.android.systemui.recents.model.Task;
+import com.android.systemui.recents.model.TaskStack;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /* The layout logic for a TaskStackView.
  *
@@ -64,7 +64,12 @@ public class TaskStackViewLayoutAlgorithm {
     float mInitialScrollP;
     int mWithinAffiliationOffset;
     int mBetweenAffiliationOffset;
-    HashMap<Task.TaskKey, Float> mTaskProgressMap = new HashMap<Task.TaskKey, Float>();
+    // The curve progress of each task, indexed by its position in the stack
+    float[] mTaskProgress = new float[0];
+    Task.TaskKey[] mTaskProgressKeys = new Task.TaskKey[0];
+    int mTaskProgressCount;
+    // The stack the task progress was computed for, used to look up the index of a task
+    TaskStack mStack;
 
     // Log function
     static final float XScale = 1.75f;  // The large the XScale, the longer the flat area of the curve
@@ -107,11 +112,13 @@ public class TaskStackViewLayoutAlgorithm {
 
     /** Computes the minimum and maximum scroll progress values.  This method may be called before
      * the RecentsConfiguration is set, so we need to pass in the alt-tab state. */
-    void computeMinMaxScroll(ArrayList<Task> tasks, boolean launchedWithAltTab,
+    void computeMinMaxScroll(TaskStack stack, boolean launchedWithAltTab,
             boolean launchedFromHome) {
         Log.d(TAG, "computeMinMaxScroll: ");
-        // Clear the progress map
-        mTaskProgressMap.clear();
+        ArrayList<Task> tasks = stack.getTasks();
+        // Clear the task progress
+        mStack = stack;
+        mTaskProgressCount = 0;
 
         // Return early if we have no tasks
         if (tasks.isEmpty()) {
@@ -146,9 +153,14 @@ public class TaskStackViewLayoutAlgorithm {
         float pAtBackMostCardTop = 0.5f;
         float pAtFrontMostCardTop = pAtBackMostCardTop;
         int taskCount = tasks.size();
+        if (mTaskProgress.length < taskCount) {
+            mTaskProgress = new float[taskCount];
+            mTaskProgressKeys = new Task.TaskKey[taskCount];
+        }
         for (int i = 0; i < taskCount; i++) {
             Task task = tasks.get(i);
-            mTaskProgressMap.put(task.key, pAtFrontMostCardTop);
+            mTaskProgress[i] = pAtFrontMostCardTop;
+            mTaskProgressKeys[i] = task.key;
 
             if (i < (taskCount - 1)) {
                 // Increment the peek height
@@ -157,6 +169,11 @@ public class TaskStackViewLayoutAlgorithm {
                 pAtFrontMostCardTop += pPeek;
             }
         }
+        // Clear the keys of the tasks that are no longer in the stack
+        for (int i = taskCount; i < mTaskProgressKeys.length; i++) {
+            mTaskProgressKeys[i] = null;
+        }
+        mTaskProgressCount = taskCount;
 
         mMaxScrollP = pAtFrontMostCardTop + pDismissAllButtonOffset -
                 ((1f - pTaskHeightOffset - pNavBarOffset));
@@ -184,11 +201,11 @@ public class TaskStackViewLayoutAlgorithm {
         int taskHeight = mTaskRect.height();
         int numVisibleTasks = 1;
         int numVisibleThumbnails = 1;
-        float progress = mTaskProgressMap.get(tasks.get(tasks.size() - 1).key) - mInitialScrollP;
+        float progress = mTaskProgress[tasks.size() - 1] - mInitialScrollP;
         int prevScreenY = curveProgressToScreenY(progress);
         for (int i = tasks.size() - 2; i >= 0; i--) {
             Task task = tasks.get(i);
-            progress = mTaskProgressMap.get(task.key) - mInitialScrollP;
+            progress = mTaskProgress[i] - mInitialScrollP;
             if (progress < 0) {
                 break;
             }
@@ -207,7 +224,7 @@ public class TaskStackViewLayoutAlgorithm {
                     // walk through remaining visible set
                     for (int j = i; j >= 0; j--) {
                         numVisibleTasks++;
-                        progress = mTaskProgressMap.get(tasks.get(j).key) - mInitialScrollP;
+                        progress = mTaskProgress[j] - mInitialScrollP;
                         if (progress < 0) {
                             break;
                         }
@@ -226,19 +243,39 @@ public class TaskStackViewLayoutAlgorithm {
     public TaskViewTransform getStackTransform(Task task, float stackScroll,
             TaskViewTransform transformOut, TaskViewTransform prevTransform) {
         Log.d(TAG, "getStackTransform: ");
+        return getStackTransform(indexOfTaskProgress(task), stackScroll, transformOut,
+                prevTransform);
+    }
+
+    /**
+     * Update/get the transform for a task, given its index in the stack.  This avoids having to
+     * look up the task, as long as the stack has not changed since the min/max scroll was last
+     * computed.
+     */
+    public TaskViewTransform getStackTransform(Task task, int taskIndex, float stackScroll,
+            TaskViewTransform transformOut, TaskViewTransform prevTransform) {
+        if (task != null && (taskIndex < 0 || taskIndex >= mTaskProgressCount ||
+                mTaskProgressKeys[taskIndex] != task.key)) {
+            taskIndex = indexOfTaskProgress(task);
+        }
+        return getStackTransform(taskIndex, stackScroll, transformOut, prevTransform);
+    }
+
+    /** Update/get the transform for the task progress at the given index. */
+    TaskViewTransform getStackTransform(int taskIndex, float stackScroll,
+            TaskViewTransform transformOut, TaskViewTransform prevTransform) {
         // Return early if we have an invalid index
-        if (task == null || !mTaskProgressMap.containsKey(task.key)) {
+        if (taskIndex < 0 || taskIndex >= mTaskProgressCount) {
             transformOut.reset();
             return transformOut;
         }
-        return getStackTransform(mTaskProgressMap.get(task.key), stackScroll, transformOut,
+        return getStackTransform(mTaskProgress[taskIndex], stackScroll, transformOut,
                 prevTransform);
     }
 
     /** Update/get the transform */
     public TaskViewTransform getStackTransform(float taskProgress, float stackScroll,
             TaskViewTransform transformOut, TaskViewTransform prevTransform) {
-        Log.d(TAG, "getStackTransform: ");
         float pTaskRelative = taskProgress - stackScroll;
         float pBounded = Math.max(0, Math.min(pTaskRelative, 1f));
         // If the task top is outside of the bounds below the screen, then immediately reset it
@@ -283,8 +320,31 @@ public class TaskStackViewLayoutAlgorithm {
     /** Returns the scroll to such task top = 1f; */
     float getStackScrollForTask(Task t) {
         Log.d(TAG, "getStackScrollForTask: ");
-        if (!mTaskProgressMap.containsKey(t.key)) return 0f;
-        return mTaskProgressMap.get(t.key);
+        int taskIndex = indexOfTaskProgress(t);
+        if (taskIndex < 0) return 0f;
+        return mTaskProgress[taskIndex];
+    }
+
+    /**
+     * Returns the index of the progress of the given task, or -1 if the task was not in the stack
+     * when the min/max scroll was last computed.  The index is taken from the task indices of the
+     * stack, and only searched for if the stack has changed since.
+     */
+    int indexOfTaskProgress(Task t) {
+        if (t == null) return -1;
+        if (mStack != null) {
+            int taskIndex = mStack.indexOfTask(t);
+            if (0 <= taskIndex && taskIndex < mTaskProgressCount &&
+                    mTaskProgressKeys[taskIndex].equals(t.key)) {
+                return taskIndex;
+            }
+        }
+        for (int i = mTaskProgressCount - 1; i >= 0; i--) {
+            if (mTaskProgressKeys[i].equals(t.key)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /** Initializes the curve. */
@@ -353,31 +413,14 @@ public class TaskStackViewLayoutAlgorithm {
         Log.d(TAG, "logFunc: ");
         return 1f - (float) (Math.pow(LogBase, reverse(x))) / (LogBase);
     }
-    /** The inverse of the log function describing the curve. */
-    float invLogFunc(float y) {
-        Log.d(TAG, "invLogFunc: ");
-        return (float) (Math.log((1f - reverse(y)) * (LogBase - 1) + 1) / Math.log(LogBase));
-    }
-
     /** Converts from the progress along the curve to a screen coordinate. */
     int curveProgressToScreenY(float p) {
-        Log.d(TAG, "curveProgressToScreenY: ");
         if (p < 0 || p > 1) return mStackVisibleRect.top + (int) (p * mStackVisibleRect.height());
-        float pIndex = p * PrecisionSteps;
-        int pFloorIndex = (int) Math.floor(pIndex);
-        int pCeilIndex = (int) Math.ceil(pIndex);
-        float xFraction = 0;
-        if (pFloorIndex < PrecisionSteps && (pCeilIndex != pFloorIndex)) {
-            float pFraction = (pIndex - pFloorIndex) / (pCeilIndex - pFloorIndex);
-            xFraction = (xp[pCeilIndex] - xp[pFloorIndex]) * pFraction;
-        }
-        float x = xp[pFloorIndex] + xFraction;
-        return mStackVisibleRect.top + (int) (x * mStackVisibleRect.height());
+        return mStackVisibleRect.top + (int) (interpolateTable(xp, p) * mStackVisibleRect.height());
     }
 
     /** Converts from the progress along the curve to a scale. */
     float curveProgressToScale(float p) {
-        Log.d(TAG, "curveProgressToScale: ");
         if (p < 0) return StackPeekMinScale;
         if (p > 1) return 1f;
         float scaleRange = (1f - StackPeekMinScale);
@@ -387,17 +430,20 @@ public class TaskStackViewLayoutAlgorithm {
 
     /** Converts from a screen coordinate to the progress along the curve. */
     float screenYToCurveProgress(int screenY) {
-        Log.d(TAG, "screenYToCurveProgress: ");
         float x = (float) (screenY - mStackVisibleRect.top) / mStackVisibleRect.height();
         if (x < 0 || x > 1) return x;
-        float xIndex = x * PrecisionSteps;
-        int xFloorIndex = (int) Math.floor(xIndex);
-        int xCeilIndex = (int) Math.ceil(xIndex);
-        float pFraction = 0;
-        if (xFloorIndex < PrecisionSteps && (xCeilIndex != xFloorIndex)) {
-            float xFraction = (xIndex - xFloorIndex) / (xCeilIndex - xFloorIndex);
-            pFraction = (px[xCeilIndex] - px[xFloorIndex]) * xFraction;
-        }
-        return px[xFloorIndex] + pFraction;
+        return interpolateTable(px, x);
+    }
+
+    /**
+     * Linearly interpolates the curve table at the given value in 0..1.  The value is never
+     * negative, so truncating is the same as flooring it.
+     */
+    static float interpolateTable(float[] table, float v) {
+        float index = v * PrecisionSteps;
+        int floorIndex = (int) index;
+        if (floorIndex >= PrecisionSteps) return table[PrecisionSteps];
+        return table[floorIndex] + (table[floorIndex + 1] - table[floorIndex]) *
+                (index - floorIndex);
     }
 }
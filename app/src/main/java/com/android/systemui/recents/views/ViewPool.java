@@ -17,8 +17,11 @@
 package com.android.systemui.recents.views;
 
 import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.Log;
 
+import java.io.PrintWriter;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -33,11 +36,39 @@ public class ViewPool<V, T> {
         public void prepareViewToEnterPool(V v);
         public void prepareViewToLeavePool(V v, T prepareData, boolean isNewView);
         public boolean hasPreferredData(V v, T preferredData);
+        public void prepareViewToBeReleased(V v);
     }
 
     Context mContext;
     ViewPoolConsumer<V, T> mViewCreator;
     LinkedList<V> mPool = new LinkedList<V>();
+    // Views that were created ahead of time, and have never been added to the hierarchy
+    LinkedList<V> mPrewarmedPool = new LinkedList<V>();
+    int mPrewarmTargetCount;
+    boolean mPrewarmScheduled;
+
+    // Pool statistics
+    int mNumViews;
+    int mNumPickUps;
+    int mNumPoolHits;
+    int mNumPrewarmedHits;
+    int mNumPrewarmedViews;
+    int mNumReleasedViews;
+
+    // Creates one view each time the main thread goes idle, until we reach the prewarm target
+    MessageQueue.IdleHandler mPrewarmIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (getNumAvailableViews() >= mPrewarmTargetCount) {
+                mPrewarmScheduled = false;
+                return false;
+            }
+            mPrewarmedPool.push(mViewCreator.createView(mContext));
+            mNumViews++;
+            mNumPrewarmedViews++;
+            return true;
+        }
+    };
 
     /** Initializes the pool with a fixed predetermined pool size */
     public ViewPool(Context context, ViewPoolConsumer<V, T> viewCreator) {
@@ -57,10 +88,18 @@ public class ViewPool<V, T> {
         Log.d(TAG, "pickUpViewFromPool: ");
         V v = null;
         boolean isNewView = false;
+        mNumPickUps++;
         if (mPool.isEmpty()) {
-            v = mViewCreator.createView(mContext);
+            if (!mPrewarmedPool.isEmpty()) {
+                v = mPrewarmedPool.pop();
+                mNumPrewarmedHits++;
+            } else {
+                v = mViewCreator.createView(mContext);
+                mNumViews++;
+            }
             isNewView = true;
         } else {
+            mNumPoolHits++;
             // Try and find a preferred view
             Iterator<V> iter = mPool.iterator();
             while (iter.hasNext()) {
@@ -80,6 +119,73 @@ public class ViewPool<V, T> {
         return v;
     }
 
+    /**
+     * Creates views ahead of time while the main thread is idle, until the given number of views
+     * are available in the pool.  Views that are in use don't count towards the target.
+     */
+    void prewarm(int count) {
+        Log.d(TAG, "prewarm: ");
+        mPrewarmTargetCount = count;
+        if (!mPrewarmScheduled && getNumAvailableViews() < mPrewarmTargetCount) {
+            mPrewarmScheduled = true;
+            Looper.myQueue().addIdleHandler(mPrewarmIdleHandler);
+        }
+    }
+
+    /** Moves the views that were created ahead of time by another pool into this pool. */
+    void takePrewarmedViews(ViewPool<V, T> pool) {
+        Log.d(TAG, "takePrewarmedViews: ");
+        if (pool.mPrewarmScheduled) {
+            Looper.myQueue().removeIdleHandler(pool.mPrewarmIdleHandler);
+            pool.mPrewarmScheduled = false;
+        }
+        int numViews = pool.mPrewarmedPool.size();
+        mPrewarmedPool.addAll(pool.mPrewarmedPool);
+        pool.mPrewarmedPool.clear();
+        pool.mNumViews -= numViews;
+        mNumViews += numViews;
+        mNumPrewarmedViews += numViews;
+    }
+
+    /** Returns the number of views in the pool, which are not in use. */
+    int getNumAvailableViews() {
+        return mPool.size() + mPrewarmedPool.size();
+    }
+
+    /** Releases all the views in the pool, and stops creating views ahead of time. */
+    void trim() {
+        Log.d(TAG, "trim: ");
+        if (mPrewarmScheduled) {
+            Looper.myQueue().removeIdleHandler(mPrewarmIdleHandler);
+            mPrewarmScheduled = false;
+        }
+        mPrewarmTargetCount = 0;
+        int numReleasedViews = mPool.size() + mPrewarmedPool.size();
+        while (!mPool.isEmpty()) {
+            mViewCreator.prepareViewToBeReleased(mPool.pop());
+        }
+        mPrewarmedPool.clear();
+        mNumViews -= numReleasedViews;
+        mNumReleasedViews += numReleasedViews;
+    }
+
+    /** Dumps the pool statistics. */
+    void dump(String prefix, PrintWriter pw) {
+        Log.d(TAG, "dump: ");
+        pw.print(prefix); pw.print(TAG);
+        pw.print(" views="); pw.print(mNumViews);
+        pw.print(" pooled="); pw.print(mPool.size());
+        pw.print(" prewarmed="); pw.println(mPrewarmedPool.size());
+        pw.print(prefix); pw.print("  pickUps="); pw.print(mNumPickUps);
+        pw.print(" poolHits="); pw.print(mNumPoolHits);
+        pw.print(" prewarmedHits="); pw.print(mNumPrewarmedHits);
+        pw.print(" hitRate=");
+        pw.print(mNumPickUps > 0
+                ? (100 * (mNumPoolHits + mNumPrewarmedHits) / mNumPickUps) + "%" : "n/a");
+        pw.print(" totalPrewarmed="); pw.print(mNumPrewarmedViews);
+        pw.print(" totalReleased="); pw.println(mNumReleasedViews);
+    }
+
     /** Returns an iterator to the list of the views in the pool. */
     Iterator<V> poolViewIterator() {
         if (mPool != null) {
@@ -140,6 +140,11 @@ public class ToggleSlider extends RelativeLayout {
     @Override
     public boolean dispatchTouchEvent(MotionEvent ev) {
         Log.d(TAG, "dispatchTouchEvent: ");
+        if (mMirror == null && mMirrorController != null
+                && ev.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            // The mirror is inflated lazily, it needs to see the whole gesture.
+            setMirror(mMirrorController.getMirrorSlider());
+        }
         if (mMirror != null) {
             MotionEvent copy = ev.copy();
             mMirror.dispatchTouchEvent(copy);
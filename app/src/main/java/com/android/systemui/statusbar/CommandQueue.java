@@ -20,12 +20,18 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.Pair;
 
 import com.android.internal.statusbar.IStatusBar;
 import com.android.internal.statusbar.StatusBarIcon;
 import com.android.internal.statusbar.StatusBarIconList;
+import com.android.systemui.qs.HandlerLatencyHistogram;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class takes the functions from IStatusBar that come in on
@@ -33,6 +39,13 @@ import com.android.internal.statusbar.StatusBarIconList;
  * thread, and calls onto Callbacks.  It also takes care of
  * coalescing these calls so they don't stack up.  For the calls
  * are coalesced, note that they are all idempotent.
+ *
+ * Every call goes through the handler, so calls that aren't coalesced
+ * reach the callbacks in the order they came in.  Icon changes are
+ * coalesced in lock-free per-slot cells instead of a message per slot:
+ * the first change of a batch posts one message which applies the
+ * latest value of every changed slot, so a change joining the batch may
+ * be applied ahead of calls received between it and the first one.
  */
 public class CommandQueue extends IStatusBar.Stub {
     public static final String TAG = "CommandQueue";
@@ -67,6 +80,24 @@ public class CommandQueue extends IStatusBar.Stub {
     private static final int MSG_ASSIST_DISCLOSURE          = 22 << MSG_SHIFT;
     private static final int MSG_START_ASSIST               = 23 << MSG_SHIFT;
     private static final int MSG_CAMERA_LAUNCH_GESTURE      = 24 << MSG_SHIFT;
+    private static final int MSG_ICON_CELLS                 = 25 << MSG_SHIFT;
+    private static final int MSG_COUNT                      = 26;
+
+    private static final String[] MSG_NAMES = {
+            null, "icon", "disable", "expandNotifications", "collapsePanels", "expandSettings",
+            "setSystemUiVisibility", "topAppWindowChanged", "showImeButton", "toggleRecentApps",
+            "preloadRecentApps", "cancelPreloadRecentApps", "setWindowState", "showRecentApps",
+            "hideRecentApps", "buzzBeepBlinked", "notificationLightOff", "notificationLightPulse",
+            "showScreenPinRequest", "appTransitionPending", "appTransitionCancelled",
+            "appTransitionStarting", "assistDisclosure", "startAssist", "cameraLaunchGesture",
+            "iconCells",
+    };
+
+    // Icon slots that get a lock-free cell, one bit each in mDirtyIconSlots. Slots past this
+    // (there are far fewer in practice) fall back to the handler.
+    private static final int MAX_ICON_CELLS = 64;
+    // Written into an icon cell to mean the icon should be removed.
+    private static final Object REMOVE_ICON = new Object();
 
     public static final int FLAG_EXCLUDE_NONE = 0;
     public static final int FLAG_EXCLUDE_SEARCH_PANEL = 1 << 0;
@@ -81,6 +112,14 @@ public class CommandQueue extends IStatusBar.Stub {
     private Callbacks mCallbacks;
     private Handler mHandler = new H();
 
+    // Latest pending value per icon slot: a StatusBarIcon, REMOVE_ICON or null if unchanged.
+    private final AtomicReferenceArray<Object> mIconCells =
+            new AtomicReferenceArray<>(MAX_ICON_CELLS);
+    private final AtomicLong mDirtyIconSlots = new AtomicLong();
+
+    // Binder to main thread latency per message type, indexed by what >> MSG_SHIFT.
+    private final HandlerLatencyHistogram[] mLatency = new HandlerLatencyHistogram[MSG_COUNT];
+
     /**
      * These methods are called back on the main thread.
      */
@@ -118,249 +157,253 @@ public class CommandQueue extends IStatusBar.Stub {
     public CommandQueue(Callbacks callbacks, StatusBarIconList list) {
         mCallbacks = callbacks;
         mList = list;
+        for (int i = 1; i < MSG_COUNT; i++) {
+            mLatency[i] = new HandlerLatencyHistogram();
+        }
     }
 
     public void setIcon(int index, StatusBarIcon icon) {
         Log.d(TAG, "setIcon: ");
-        synchronized (mList) {
-            int what = MSG_ICON | index;
-            mHandler.removeMessages(what);
-            mHandler.obtainMessage(what, OP_SET_ICON, 0, icon.clone()).sendToTarget();
-        }
+        // The icon was unparceled for this call, so nobody else holds on to it.
+        postIcon(index, OP_SET_ICON, icon);
     }
 
     public void removeIcon(int index) {
         Log.d(TAG, "removeIcon: ");
-        synchronized (mList) {
+        postIcon(index, OP_REMOVE_ICON, REMOVE_ICON);
+    }
+
+    private void postIcon(int index, int op, Object value) {
+        Log.d(TAG, "postIcon: ");
+        if (index < 0 || index >= MAX_ICON_CELLS) {
             int what = MSG_ICON | index;
             mHandler.removeMessages(what);
-            mHandler.obtainMessage(what, OP_REMOVE_ICON, 0, null).sendToTarget();
+            mHandler.obtainMessage(what, op, 0, value == REMOVE_ICON ? null : value)
+                    .sendToTarget();
+            return;
+        }
+        mIconCells.set(index, value);
+        final long bit = 1L << index;
+        long dirty;
+        do {
+            dirty = mDirtyIconSlots.get();
+        } while (!mDirtyIconSlots.compareAndSet(dirty, dirty | bit));
+        if (dirty == 0) {
+            // First change of a batch, later ones are picked up by the same message.
+            mHandler.sendEmptyMessage(MSG_ICON_CELLS);
+        }
+    }
+
+    private void applyIconCells() {
+        Log.d(TAG, "applyIconCells: ");
+        long dirty = mDirtyIconSlots.getAndSet(0);
+        while (dirty != 0) {
+            final int index = Long.numberOfTrailingZeros(dirty);
+            dirty &= dirty - 1;
+            final Object value = mIconCells.getAndSet(index, null);
+            if (value == REMOVE_ICON) {
+                handleIcon(index, OP_REMOVE_ICON, null);
+            } else if (value != null) {
+                handleIcon(index, OP_SET_ICON, (StatusBarIcon) value);
+            }
+        }
+    }
+
+    private void handleIcon(int index, int op, StatusBarIcon icon) {
+        Log.d(TAG, "handleIcon: ");
+        final int viewIndex = mList.getViewIndex(index);
+        switch (op) {
+            case OP_SET_ICON: {
+                StatusBarIcon old = mList.getIcon(index);
+                if (old == null) {
+                    mList.setIcon(index, icon);
+                    mCallbacks.addIcon(mList.getSlot(index), index, viewIndex, icon);
+                } else {
+                    mList.setIcon(index, icon);
+                    mCallbacks.updateIcon(mList.getSlot(index), index, viewIndex,
+                            old, icon);
+                }
+                break;
+            }
+            case OP_REMOVE_ICON:
+                if (mList.getIcon(index) != null) {
+                    mList.removeIcon(index);
+                    mCallbacks.removeIcon(mList.getSlot(index), index, viewIndex);
+                }
+                break;
+        }
+    }
+
+    private void recordLatency(int what, long latency) {
+        mLatency[what >> MSG_SHIFT].record(MSG_NAMES[what >> MSG_SHIFT], latency);
+    }
+
+    public void dump(PrintWriter pw) {
+        pw.println("  CommandQueue binder to main thread latency:");
+        for (int i = 1; i < MSG_COUNT; i++) {
+            pw.print("    "); pw.print(MSG_NAMES[i]); pw.print(": ");
+            mLatency[i].dump(pw);
         }
     }
 
     public void disable(int state1, int state2) {
         Log.d(TAG, "disable: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_DISABLE);
-            mHandler.obtainMessage(MSG_DISABLE, state1, state2, null).sendToTarget();
-        }
+        mHandler.removeMessages(MSG_DISABLE);
+        mHandler.obtainMessage(MSG_DISABLE, state1, state2, null).sendToTarget();
     }
 
     public void animateExpandNotificationsPanel() {
         Log.d(TAG, "animateExpandNotificationsPanel: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_EXPAND_NOTIFICATIONS);
-            mHandler.sendEmptyMessage(MSG_EXPAND_NOTIFICATIONS);
-        }
+        mHandler.removeMessages(MSG_EXPAND_NOTIFICATIONS);
+        mHandler.sendEmptyMessage(MSG_EXPAND_NOTIFICATIONS);
     }
 
     public void animateCollapsePanels() {
         Log.d(TAG, "animateCollapsePanels: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_COLLAPSE_PANELS);
-            mHandler.sendEmptyMessage(MSG_COLLAPSE_PANELS);
-        }
+        mHandler.removeMessages(MSG_COLLAPSE_PANELS);
+        mHandler.sendEmptyMessage(MSG_COLLAPSE_PANELS);
     }
 
     public void animateExpandSettingsPanel() {
         Log.d(TAG, "animateExpandSettingsPanel: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_EXPAND_SETTINGS);
-            mHandler.sendEmptyMessage(MSG_EXPAND_SETTINGS);
-        }
+        mHandler.removeMessages(MSG_EXPAND_SETTINGS);
+        mHandler.sendEmptyMessage(MSG_EXPAND_SETTINGS);
     }
 
     public void setSystemUiVisibility(int vis, int mask) {
         Log.d(TAG, "setSystemUiVisibility: ");
-        synchronized (mList) {
-            // Don't coalesce these, since it might have one time flags set such as
-            // STATUS_BAR_UNHIDE which might get lost.
-            mHandler.obtainMessage(MSG_SET_SYSTEMUI_VISIBILITY, vis, mask, null).sendToTarget();
-        }
+        // Don't coalesce these, since it might have one time flags set such as
+        // STATUS_BAR_UNHIDE which might get lost.
+        mHandler.obtainMessage(MSG_SET_SYSTEMUI_VISIBILITY, vis, mask, null).sendToTarget();
     }
 
     public void topAppWindowChanged(boolean menuVisible) {
         Log.d(TAG, "topAppWindowChanged: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_TOP_APP_WINDOW_CHANGED);
-            mHandler.obtainMessage(MSG_TOP_APP_WINDOW_CHANGED, menuVisible ? 1 : 0, 0,
-                    null).sendToTarget();
-        }
+        mHandler.removeMessages(MSG_TOP_APP_WINDOW_CHANGED);
+        mHandler.obtainMessage(MSG_TOP_APP_WINDOW_CHANGED, menuVisible ? 1 : 0, 0,
+                null).sendToTarget();
     }
 
     public void setImeWindowStatus(IBinder token, int vis, int backDisposition,
             boolean showImeSwitcher) {
         Log.d(TAG, "setImeWindowStatus: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_SHOW_IME_BUTTON);
-            Message m = mHandler.obtainMessage(MSG_SHOW_IME_BUTTON, vis, backDisposition, token);
-            m.getData().putBoolean(SHOW_IME_SWITCHER_KEY, showImeSwitcher);
-            m.sendToTarget();
-        }
+        mHandler.removeMessages(MSG_SHOW_IME_BUTTON);
+        Message m = mHandler.obtainMessage(MSG_SHOW_IME_BUTTON, vis, backDisposition, token);
+        m.getData().putBoolean(SHOW_IME_SWITCHER_KEY, showImeSwitcher);
+        m.sendToTarget();
     }
 
     public void showRecentApps(boolean triggeredFromAltTab) {
         Log.d(TAG, "showRecentApps: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_SHOW_RECENT_APPS);
-            mHandler.obtainMessage(MSG_SHOW_RECENT_APPS,
-                    triggeredFromAltTab ? 1 : 0, 0, null).sendToTarget();
-        }
+        mHandler.removeMessages(MSG_SHOW_RECENT_APPS);
+        mHandler.obtainMessage(MSG_SHOW_RECENT_APPS,
+                triggeredFromAltTab ? 1 : 0, 0, null).sendToTarget();
     }
 
     public void hideRecentApps(boolean triggeredFromAltTab, boolean triggeredFromHomeKey) {
         Log.d(TAG, "hideRecentApps: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_HIDE_RECENT_APPS);
-            mHandler.obtainMessage(MSG_HIDE_RECENT_APPS,
-                    triggeredFromAltTab ? 1 : 0, triggeredFromHomeKey ? 1 : 0,
-                    null).sendToTarget();
-        }
+        mHandler.removeMessages(MSG_HIDE_RECENT_APPS);
+        mHandler.obtainMessage(MSG_HIDE_RECENT_APPS,
+                triggeredFromAltTab ? 1 : 0, triggeredFromHomeKey ? 1 : 0,
+                null).sendToTarget();
     }
 
     public void toggleRecentApps() {
         Log.d(TAG, "toggleRecentApps: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_TOGGLE_RECENT_APPS);
-            mHandler.obtainMessage(MSG_TOGGLE_RECENT_APPS, 0, 0, null).sendToTarget();
-        }
+        mHandler.removeMessages(MSG_TOGGLE_RECENT_APPS);
+        mHandler.obtainMessage(MSG_TOGGLE_RECENT_APPS, 0, 0, null).sendToTarget();
     }
 
     public void preloadRecentApps() {
         Log.d(TAG, "preloadRecentApps: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_PRELOAD_RECENT_APPS);
-            mHandler.obtainMessage(MSG_PRELOAD_RECENT_APPS, 0, 0, null).sendToTarget();
-        }
+        mHandler.removeMessages(MSG_PRELOAD_RECENT_APPS);
+        mHandler.obtainMessage(MSG_PRELOAD_RECENT_APPS, 0, 0, null).sendToTarget();
     }
 
     public void cancelPreloadRecentApps() {
         Log.d(TAG, "cancelPreloadRecentApps: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_CANCEL_PRELOAD_RECENT_APPS);
-            mHandler.obtainMessage(MSG_CANCEL_PRELOAD_RECENT_APPS, 0, 0, null).sendToTarget();
-        }
+        mHandler.removeMessages(MSG_CANCEL_PRELOAD_RECENT_APPS);
+        mHandler.obtainMessage(MSG_CANCEL_PRELOAD_RECENT_APPS, 0, 0, null).sendToTarget();
     }
 
     public void setWindowState(int window, int state) {
         Log.d(TAG, "setWindowState: ");
-        synchronized (mList) {
-            // don't coalesce these
-            mHandler.obtainMessage(MSG_SET_WINDOW_STATE, window, state, null).sendToTarget();
-        }
+        // don't coalesce these
+        mHandler.obtainMessage(MSG_SET_WINDOW_STATE, window, state, null).sendToTarget();
     }
 
     public void buzzBeepBlinked() {
         Log.d(TAG, "buzzBeepBlinked: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_BUZZ_BEEP_BLINKED);
-            mHandler.sendEmptyMessage(MSG_BUZZ_BEEP_BLINKED);
-        }
+        mHandler.removeMessages(MSG_BUZZ_BEEP_BLINKED);
+        mHandler.sendEmptyMessage(MSG_BUZZ_BEEP_BLINKED);
     }
 
     public void notificationLightOff() {
         Log.d(TAG, "notificationLightOff: ");
-        synchronized (mList) {
-            mHandler.sendEmptyMessage(MSG_NOTIFICATION_LIGHT_OFF);
-        }
+        mHandler.sendEmptyMessage(MSG_NOTIFICATION_LIGHT_OFF);
     }
 
     public void notificationLightPulse(int argb, int onMillis, int offMillis) {
         Log.d(TAG, "notificationLightPulse: ");
-        synchronized (mList) {
-            mHandler.obtainMessage(MSG_NOTIFICATION_LIGHT_PULSE, onMillis, offMillis, argb)
-                    .sendToTarget();
-        }
+        mHandler.obtainMessage(MSG_NOTIFICATION_LIGHT_PULSE, onMillis, offMillis, argb)
+                .sendToTarget();
     }
 
     public void showScreenPinningRequest() {
         Log.d(TAG, "showScreenPinningRequest: ");
-        synchronized (mList) {
-            mHandler.sendEmptyMessage(MSG_SHOW_SCREEN_PIN_REQUEST);
-        }
+        mHandler.sendEmptyMessage(MSG_SHOW_SCREEN_PIN_REQUEST);
     }
 
     public void appTransitionPending() {
         Log.d(TAG, "appTransitionPending: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_APP_TRANSITION_PENDING);
-            mHandler.sendEmptyMessage(MSG_APP_TRANSITION_PENDING);
-        }
+        mHandler.removeMessages(MSG_APP_TRANSITION_PENDING);
+        mHandler.sendEmptyMessage(MSG_APP_TRANSITION_PENDING);
     }
 
     public void appTransitionCancelled() {
         Log.d(TAG, "appTransitionCancelled: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_APP_TRANSITION_PENDING);
-            mHandler.sendEmptyMessage(MSG_APP_TRANSITION_PENDING);
-        }
+        mHandler.removeMessages(MSG_APP_TRANSITION_PENDING);
+        mHandler.sendEmptyMessage(MSG_APP_TRANSITION_PENDING);
     }
 
     public void appTransitionStarting(long startTime, long duration) {
         Log.d(TAG, "appTransitionStarting: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_APP_TRANSITION_STARTING);
-            mHandler.obtainMessage(MSG_APP_TRANSITION_STARTING, Pair.create(startTime, duration))
-                    .sendToTarget();
-        }
+        mHandler.removeMessages(MSG_APP_TRANSITION_STARTING);
+        mHandler.obtainMessage(MSG_APP_TRANSITION_STARTING, Pair.create(startTime, duration))
+                .sendToTarget();
     }
 
     public void showAssistDisclosure() {
         Log.d(TAG, "showAssistDisclosure: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_ASSIST_DISCLOSURE);
-            mHandler.obtainMessage(MSG_ASSIST_DISCLOSURE).sendToTarget();
-        }
+        mHandler.removeMessages(MSG_ASSIST_DISCLOSURE);
+        mHandler.obtainMessage(MSG_ASSIST_DISCLOSURE).sendToTarget();
     }
 
     public void startAssist(Bundle args) {
         Log.d(TAG, "startAssist: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_START_ASSIST);
-            mHandler.obtainMessage(MSG_START_ASSIST, args).sendToTarget();
-        }
+        mHandler.removeMessages(MSG_START_ASSIST);
+        mHandler.obtainMessage(MSG_START_ASSIST, args).sendToTarget();
     }
 
     @Override
     public void onCameraLaunchGestureDetected(int source) {
         Log.d(TAG, "onCameraLaunchGestureDetected: ");
-        synchronized (mList) {
-            mHandler.removeMessages(MSG_CAMERA_LAUNCH_GESTURE);
-            mHandler.obtainMessage(MSG_CAMERA_LAUNCH_GESTURE, source, 0).sendToTarget();
-        }
+        mHandler.removeMessages(MSG_CAMERA_LAUNCH_GESTURE);
+        mHandler.obtainMessage(MSG_CAMERA_LAUNCH_GESTURE, source, 0).sendToTarget();
     }
 
     private final class H extends Handler {
         public void handleMessage(Message msg) {
             Log.d(TAG, "H: handleMessage: ");
             final int what = msg.what & MSG_MASK;
+            recordLatency(what, SystemClock.uptimeMillis() - msg.getWhen());
             switch (what) {
-                case MSG_ICON: {
-                    final int index = msg.what & INDEX_MASK;
-                    final int viewIndex = mList.getViewIndex(index);
-                    switch (msg.arg1) {
-                        case OP_SET_ICON: {
-                            StatusBarIcon icon = (StatusBarIcon)msg.obj;
-                            StatusBarIcon old = mList.getIcon(index);
-                            if (old == null) {
-                                mList.setIcon(index, icon);
-                                mCallbacks.addIcon(mList.getSlot(index), index, viewIndex, icon);
-                            } else {
-                                mList.setIcon(index, icon);
-                                mCallbacks.updateIcon(mList.getSlot(index), index, viewIndex,
-                                        old, icon);
-                            }
-                            break;
-                        }
-                        case OP_REMOVE_ICON:
-                            if (mList.getIcon(index) != null) {
-                                mList.removeIcon(index);
-                                mCallbacks.removeIcon(mList.getSlot(index), index, viewIndex);
-                            }
-                            break;
-                    }
+                case MSG_ICON:
+                    handleIcon(msg.what & INDEX_MASK, msg.arg1, (StatusBarIcon) msg.obj);
+                    break;
+                case MSG_ICON_CELLS:
+                    applyIconCells();
                     break;
-                }
                 case MSG_DISABLE:
                     mCallbacks.disable(msg.arg1, msg.arg2, true /* animate */);
                     break;
@@ -398,12 +441,12 @@ public class CommandQueue extends IStatusBar.Stub {
                 case MSG_CANCEL_PRELOAD_RECENT_APPS:
                     mCallbacks.cancelPreloadRecentApps();
                     break;
-                case MSG_SET_WINDOW_STATE:
-                    mCallbacks.setWindowState(msg.arg1, msg.arg2);
-                    break;
                 case MSG_BUZZ_BEEP_BLINKED:
                     mCallbacks.buzzBeepBlinked();
                     break;
+                case MSG_SET_WINDOW_STATE:
+                    mCallbacks.setWindowState(msg.arg1, msg.arg2);
+                    break;
                 case MSG_NOTIFICATION_LIGHT_OFF:
                     mCallbacks.notificationLightOff();
                     break;
@@ -436,4 +479,3 @@ public class CommandQueue extends IStatusBar.Stub {
         }
     }
 }
-
@@ -23,6 +23,7 @@ import android.graphics.PorterDuff;
 import android.graphics.drawable.Animatable;
 import android.graphics.drawable.Drawable;
 import android.telephony.SubscriptionInfo;
+import android.text.TextUtils;
 import android.util.ArraySet;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -33,7 +34,9 @@ import android.view.accessibility.AccessibilityEvent;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.systemui.R;
+import com.android.systemui.statusbar.phone.IconTintDistributor;
 import com.android.systemui.statusbar.phone.StatusBarIconController;
 import com.android.systemui.statusbar.policy.NetworkController.IconState;
 import com.android.systemui.statusbar.policy.NetworkControllerImpl;
@@ -48,7 +51,8 @@ import java.util.List;
 public class SignalClusterView
         extends LinearLayout
         implements NetworkControllerImpl.SignalCallback,
-        SecurityController.SecurityControllerCallback, Tunable {
+        SecurityController.SecurityControllerCallback, Tunable,
+        IconTintDistributor.TintReceiver {
 
     static final String TAG = "SignalClusterView";
     static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
@@ -76,7 +80,12 @@ public class SignalClusterView
     private String mWifiDescription;
     private String mEthernetDescription;
     private ArrayList<PhoneState> mPhoneStates = new ArrayList<PhoneState>();
+    // Swapped with mPhoneStates in setSubs so it doesn't allocate a list each time.
+    private ArrayList<PhoneState> mSparePhoneStates = new ArrayList<PhoneState>();
+    private boolean mApplyPosted;
     private int mIconTint = Color.WHITE;
+    // Shared with the other status bar icons, see IconTintDistributor.
+    private ColorStateList mIconTintList = ColorStateList.valueOf(mIconTint);
     private float mDarkIntensity;
 
     ViewGroup mEthernetGroup, mWifiGroup;
@@ -208,24 +217,34 @@ public class SignalClusterView
     @Override
     public void onStateChanged() {
         Log.d(TAG, "onStateChanged: ");
-        post(new Runnable() {
-            @Override
-            public void run() {
-                mVpnVisible = mSC.isVpnEnabled();
-                apply();
-            }
-        });
+        post(mUpdateVpn);
     }
 
+    private final Runnable mUpdateVpn = new Runnable() {
+        @Override
+        public void run() {
+            boolean vpnVisible = mSC.isVpnEnabled();
+            if (vpnVisible != mVpnVisible) {
+                mVpnVisible = vpnVisible;
+                scheduleApply();
+            }
+        }
+    };
+
     @Override
     public void setWifiIndicators(boolean enabled, IconState statusIcon, IconState qsIcon,
             boolean activityIn, boolean activityOut, String description) {
         Log.d(TAG, "setWifiIndicators: ");
-        mWifiVisible = statusIcon.visible && !mBlockWifi;
+        boolean visible = statusIcon.visible && !mBlockWifi;
+        if (visible == mWifiVisible && statusIcon.icon == mWifiStrengthId
+                && TextUtils.equals(statusIcon.contentDescription, mWifiDescription)) {
+            return;
+        }
+        mWifiVisible = visible;
         mWifiStrengthId = statusIcon.icon;
         mWifiDescription = statusIcon.contentDescription;
 
-        apply();
+        scheduleApply();
     }
 
     @Override
@@ -237,31 +256,46 @@ public class SignalClusterView
         if (state == null) {
             return;
         }
-        state.mMobileVisible = statusIcon.visible && !mBlockMobile;
+        boolean visible = statusIcon.visible && !mBlockMobile;
+        boolean wide = statusType != 0 && isWide;
+        if (visible == state.mMobileVisible && statusIcon.icon == state.mMobileStrengthId
+                && statusType == state.mMobileTypeId && wide == state.mIsMobileTypeIconWide
+                && TextUtils.equals(statusIcon.contentDescription, state.mMobileDescription)
+                && TextUtils.equals(typeContentDescription, state.mMobileTypeDescription)) {
+            return;
+        }
+        state.mMobileVisible = visible;
         state.mMobileStrengthId = statusIcon.icon;
         state.mMobileTypeId = statusType;
-        state.mMobileDescription = statusIcon.contentDescription;
-        state.mMobileTypeDescription = typeContentDescription;
-        state.mIsMobileTypeIconWide = statusType != 0 && isWide;
+        state.setDescriptions(statusIcon.contentDescription, typeContentDescription);
+        state.mIsMobileTypeIconWide = wide;
 
-        apply();
+        scheduleApply();
     }
 
     @Override
     public void setEthernetIndicators(IconState state) {
         Log.d(TAG, "setEthernetIndicators: ");
-        mEthernetVisible = state.visible && !mBlockEthernet;
+        boolean visible = state.visible && !mBlockEthernet;
+        if (visible == mEthernetVisible && state.icon == mEthernetIconId
+                && TextUtils.equals(state.contentDescription, mEthernetDescription)) {
+            return;
+        }
+        mEthernetVisible = visible;
         mEthernetIconId = state.icon;
         mEthernetDescription = state.contentDescription;
 
-        apply();
+        scheduleApply();
     }
 
     @Override
     public void setNoSims(boolean show) {
         Log.d(TAG, "setNoSims: ");
-        mNoSimsVisible = show && !mBlockMobile;
-        apply();
+        boolean visible = show && !mBlockMobile;
+        if (visible != mNoSimsVisible) {
+            mNoSimsVisible = visible;
+            scheduleApply();
+        }
     }
 
     @Override
@@ -270,20 +304,52 @@ public class SignalClusterView
         if (hasCorrectSubs(subs)) {
             return;
         }
-        // Clear out all old subIds.
-        mPhoneStates.clear();
-        if (mMobileSignalGroup != null) {
-            mMobileSignalGroup.removeAllViews();
-        }
+        // Keep the views of subscriptions that are still around, only inflate new ones.
+        final ArrayList<PhoneState> oldStates = mPhoneStates;
+        final ArrayList<PhoneState> states = mSparePhoneStates;
+        states.clear();
+        boolean inflated = false;
         final int n = subs.size();
         for (int i = 0; i < n; i++) {
-            inflatePhoneState(subs.get(i).getSubscriptionId());
+            final int subId = subs.get(i).getSubscriptionId();
+            PhoneState state = removeState(oldStates, subId);
+            if (state == null) {
+                state = new PhoneState(subId, mContext);
+                inflated = true;
+            }
+            states.add(state);
         }
-        if (isAttachedToWindow()) {
+        mPhoneStates = states;
+        if (mMobileSignalGroup != null) {
+            for (int i = 0; i < oldStates.size(); i++) {
+                mMobileSignalGroup.removeView(oldStates.get(i).mMobileGroup);
+            }
+            for (int i = 0; i < n; i++) {
+                final View view = states.get(i).mMobileGroup;
+                if (mMobileSignalGroup.getChildAt(i) == view) continue;
+                if (view.getParent() == mMobileSignalGroup) {
+                    // Subscription moved to another slot.
+                    mMobileSignalGroup.removeView(view);
+                }
+                mMobileSignalGroup.addView(view, i);
+            }
+        }
+        oldStates.clear();
+        mSparePhoneStates = oldStates;
+        if (inflated && isAttachedToWindow()) {
             applyIconTint();
         }
     }
 
+    private static PhoneState removeState(ArrayList<PhoneState> states, int subId) {
+        for (int i = 0; i < states.size(); i++) {
+            if (states.get(i).mSubId == subId) {
+                return states.remove(i);
+            }
+        }
+        return null;
+    }
+
     private boolean hasCorrectSubs(List<SubscriptionInfo> subs) {
         Log.d(TAG, "hasCorrectSubs: ");
         final int N = subs.size();
@@ -300,7 +366,8 @@ public class SignalClusterView
 
     private PhoneState getState(int subId) {
         Log.d(TAG, "getState: ");
-        for (PhoneState state : mPhoneStates) {
+        for (int i = 0; i < mPhoneStates.size(); i++) {
+            PhoneState state = mPhoneStates.get(i);
             if (state.mSubId == subId) {
                 return state;
             }
@@ -309,24 +376,19 @@ public class SignalClusterView
         return null;
     }
 
-    private PhoneState inflatePhoneState(int subId) {
-        Log.d(TAG, "inflatePhoneState: ");
-        PhoneState state = new PhoneState(subId, mContext);
-        if (mMobileSignalGroup != null) {
-            mMobileSignalGroup.addView(state.mMobileGroup);
-        }
-        mPhoneStates.add(state);
-        return state;
-    }
-
     @Override
     public void setIsAirplaneMode(IconState icon) {
         Log.d(TAG, "setIsAirplaneMode: ");
-        mIsAirplaneMode = icon.visible && !mBlockAirplane;
+        boolean airplaneMode = icon.visible && !mBlockAirplane;
+        if (airplaneMode == mIsAirplaneMode && icon.icon == mAirplaneIconId
+                && TextUtils.equals(icon.contentDescription, mAirplaneContentDescription)) {
+            return;
+        }
+        mIsAirplaneMode = airplaneMode;
         mAirplaneIconId = icon.icon;
         mAirplaneContentDescription = icon.contentDescription;
 
-        apply();
+        scheduleApply();
     }
 
     @Override
@@ -393,9 +455,36 @@ public class SignalClusterView
         return false;
     }
 
-    // Run after each indicator change.
+    /**
+     * Applies the indicators on the next frame, so a burst of callbacks (e.g. one per
+     * subscription) only walks the views once.
+     */
+    private void scheduleApply() {
+        Log.d(TAG, "scheduleApply: ");
+        if (mApplyPosted) return;
+        mApplyPosted = true;
+        postOnAnimation(mApplyRunnable);
+    }
+
+    @VisibleForTesting
+    boolean isApplyPending() {
+        return mApplyPosted;
+    }
+
+    private final Runnable mApplyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            apply();
+        }
+    };
+
+    // Run after indicator changes, at most once per frame unless the views were reset.
     private void apply() {
         Log.d(TAG, "apply: ");
+        if (mApplyPosted) {
+            mApplyPosted = false;
+            removeCallbacks(mApplyRunnable);
+        }
         if (mWifiGroup == null) return;
 
         mVpn.setVisibility(mVpnVisible ? View.VISIBLE : View.GONE);
@@ -437,7 +526,8 @@ public class SignalClusterView
 
         boolean anyMobileVisible = false;
         int firstMobileTypeId = 0;
-        for (PhoneState state : mPhoneStates) {
+        for (int i = 0; i < mPhoneStates.size(); i++) {
+            PhoneState state = mPhoneStates.get(i);
             if (state.apply(anyMobileVisible)) {
                 if (!anyMobileVisible) {
                     firstMobileTypeId = state.mMobileTypeId;
@@ -476,10 +566,12 @@ public class SignalClusterView
         setPaddingRelative(0, 0, anythingVisible ? mEndPadding : mEndPaddingNothingVisible, 0);
     }
 
-    public void setIconTint(int tint, float darkIntensity) {
-        Log.d(TAG, "setIconTint: ");
+    @Override
+    public void onTintChanged(int tint, ColorStateList tintList, float darkIntensity) {
+        Log.d(TAG, "onTintChanged: ");
         boolean changed = tint != mIconTint || darkIntensity != mDarkIntensity;
         mIconTint = tint;
+        mIconTintList = tintList;
         mDarkIntensity = darkIntensity;
         if (changed && isAttachedToWindow()) {
             applyIconTint();
@@ -488,13 +580,13 @@ public class SignalClusterView
 
     private void applyIconTint() {
         Log.d(TAG, "applyIconTint: ");
-        setTint(mVpn, mIconTint);
-        setTint(mAirplane, mIconTint);
+        setTint(mVpn);
+        setTint(mAirplane);
         applyDarkIntensity(mDarkIntensity, mNoSims, mNoSimsDark);
         applyDarkIntensity(mDarkIntensity, mWifi, mWifiDark);
         applyDarkIntensity(mDarkIntensity, mEthernet, mEthernetDark);
         for (int i = 0; i < mPhoneStates.size(); i++) {
-            mPhoneStates.get(i).setIconTint(mIconTint, mDarkIntensity);
+            mPhoneStates.get(i).setIconTint(mDarkIntensity);
         }
     }
 
@@ -504,9 +596,11 @@ public class SignalClusterView
         darkIcon.setAlpha(darkIntensity);
     }
 
-    private void setTint(ImageView v, int tint) {
+    private void setTint(ImageView v) {
         Log.d(TAG, "setTint: ");
-        v.setImageTintList(ColorStateList.valueOf(tint));
+        if (v.getImageTintList() != mIconTintList) {
+            v.setImageTintList(mIconTintList);
+        }
     }
 
     private class PhoneState {
@@ -517,6 +611,8 @@ public class SignalClusterView
         private int mLastMobileTypeId = -1;
         private boolean mIsMobileTypeIconWide;
         private String mMobileDescription, mMobileTypeDescription;
+        // Content description of the group, rebuilt only when one of the above changes.
+        private String mMobileGroupDescription;
 
         private ViewGroup mMobileGroup;
         private ImageView mMobile, mMobileDark, mMobileType;
@@ -536,6 +632,18 @@ public class SignalClusterView
             mMobileType     = (ImageView) root.findViewById(R.id.mobile_type);
         }
 
+        public void setDescriptions(String description, String typeDescription) {
+            Log.d(TAG, "PhoneState: setDescriptions: ");
+            if (TextUtils.equals(description, mMobileDescription)
+                    && TextUtils.equals(typeDescription, mMobileTypeDescription)
+                    && mMobileGroupDescription != null) {
+                return;
+            }
+            mMobileDescription = description;
+            mMobileTypeDescription = typeDescription;
+            mMobileGroupDescription = typeDescription + " " + description;
+        }
+
         public boolean apply(boolean isSecondaryIcon) {
             Log.d(TAG, "PhoneState: apply: ");
             if (mMobileVisible && !mIsAirplaneMode) {
@@ -549,8 +657,7 @@ public class SignalClusterView
                     mMobileType.setImageResource(mMobileTypeId);
                     mLastMobileTypeId = mMobileTypeId;
                 }
-                mMobileGroup.setContentDescription(mMobileTypeDescription
-                        + " " + mMobileDescription);
+                mMobileGroup.setContentDescription(mMobileGroupDescription);
                 mMobileGroup.setVisibility(View.VISIBLE);
             } else {
                 mMobileGroup.setVisibility(View.GONE);
@@ -609,10 +716,10 @@ public class SignalClusterView
             }
         }
 
-        public void setIconTint(int tint, float darkIntensity) {
+        public void setIconTint(float darkIntensity) {
             Log.d(TAG, "PhoneState: setIconTint: ");
             applyDarkIntensity(darkIntensity, mMobile, mMobileDark);
-            setTint(mMobileType, tint);
+            setTint(mMobileType);
         }
     }
 }
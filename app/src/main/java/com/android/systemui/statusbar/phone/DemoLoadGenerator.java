@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.systemui.statusbar.phone;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.android.systemui.DemoMode;
+import com.android.systemui.R;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Replays a seeded timeline of signal changes, battery ticks, status icon churn, notification
+ * posts and cancels and heads-up bursts through demo mode, and records frame times and main
+ * thread allocations while it runs. Started with the demo command "load", e.g.
+ *
+ * <pre>
+ * adb shell am broadcast -a com.android.systemui.demo -e command load -e duration 30000 \
+ *     -e signal 10 -e battery 2 -e icons 4 -e notifications 2 -e headsup 3 -e seed 42
+ * </pre>
+ *
+ * Rates are events per second, 0 turns a stream off. "-e stop true" ends a run early.
+ *
+ * <p>Allocations are counted with the {@link Debug} thread alloc counters. They are deprecated,
+ * but nothing else counts the allocations of the main thread alone, which is what the status bar
+ * does its work on.
+ */
+public class DemoLoadGenerator implements DemoMode {
+    private static final String TAG = "DemoLoadGenerator";
+    private static final String NOTIFICATION_TAG = "demo_load";
+
+    private static final long DEFAULT_DURATION = 10000;
+    private static final long MAX_DURATION = 10 * 60 * 1000;
+    private static final long DEFAULT_HEADS_UP_INTERVAL = 5000;
+    private static final int DEFAULT_MAX_NOTIFICATIONS = 10;
+    private static final int HEADS_UP_ID_BASE = 1000;
+
+    private static final String[] LEVELS = { "0", "1", "2", "3", "4" };
+    private static final String[] BATTERY_LEVELS = new String[101];
+    static {
+        for (int i = 0; i < BATTERY_LEVELS.length; i++) {
+            BATTERY_LEVELS[i] = Integer.toString(i);
+        }
+    }
+    private static final String[] DATA_TYPES = { "lte", "4g", "3g", "h", "e", "g" };
+    private static final String[] STATUS_SLOTS =
+            { "alarm", "location", "bluetooth", "cast", "hotspot", "tty" };
+    private static final String[] STATUS_VALUES_BLUETOOTH = { "connected", "disconnected" };
+    private static final String[] EVENT_NAMES =
+            { "signal", "battery", "icons", "notifications", "headsUp" };
+
+    private final Context mContext;
+    private final DemoMode mTarget;
+    private final Handler mHandler = new Handler();
+    private final NotificationManager mNotificationManager;
+
+    // Reused for every dispatched command, the status bar only reads them synchronously.
+    private final Bundle mNetworkArgs = new Bundle();
+    private final Bundle mBatteryArgs = new Bundle();
+    private final Bundle mStatusArgs = new Bundle();
+
+    private boolean mRunning;
+    private Random mRandom;
+    private long mSeed;
+    private long mDuration;
+    private long mStartTime;
+    private long mSignalInterval;
+    private long mBatteryInterval;
+    private long mIconsInterval;
+    private long mNotificationsInterval;
+    private long mHeadsUpInterval;
+    private int mHeadsUpBurst;
+    private boolean[] mActiveNotifications;
+    private int mActiveCount;
+    private int mBatteryLevel;
+
+    private long[] mFrameIntervals;
+    private int mFrameCount;
+    private long mLastFrameTime;
+    // Allocations of the generator's own work, subtracted from the result.
+    private long mGeneratorAllocCount;
+    private long mGeneratorAllocSize;
+    private long mOverheadAllocCount;
+    private long mOverheadAllocSize;
+    private boolean mInOverhead;
+    private final int[] mEventCounts = new int[EVENT_NAMES.length];
+
+    private String mLastResult;
+
+    public DemoLoadGenerator(Context context, DemoMode target) {
+        mContext = context;
+        mTarget = target;
+        mNotificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
+    @Override
+    public void dispatchDemoCommand(String command, Bundle args) {
+        Log.d(TAG, "dispatchDemoCommand: ");
+        if (command.equals(COMMAND_EXIT)) {
+            stop(false /* exitDemoMode */);
+        } else if (command.equals(COMMAND_LOAD)) {
+            if (Boolean.parseBoolean(args.getString("stop"))) {
+                stop(true /* exitDemoMode */);
+            } else {
+                start(args);
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void start(Bundle args) {
+        Log.d(TAG, "start: ");
+        if (mRunning) {
+            Log.w(TAG, "Load already running, ignoring");
+            return;
+        }
+        mDuration = Math.min(getLong(args, "duration", DEFAULT_DURATION), MAX_DURATION);
+        mSeed = getLong(args, "seed", 0);
+        mSignalInterval = toInterval(getFloat(args, "signal", 4));
+        mBatteryInterval = toInterval(getFloat(args, "battery", 1));
+        mIconsInterval = toInterval(getFloat(args, "icons", 2));
+        mNotificationsInterval = toInterval(getFloat(args, "notifications", 1));
+        mHeadsUpBurst = (int) getLong(args, "headsup", 0);
+        mHeadsUpInterval = getLong(args, "headsupevery", DEFAULT_HEADS_UP_INTERVAL);
+        mActiveNotifications = new boolean[(int) Math.max(1,
+                getLong(args, "maxnotifications", DEFAULT_MAX_NOTIFICATIONS))];
+        mActiveCount = 0;
+        mRandom = new Random(mSeed);
+        mBatteryLevel = 100;
+        Arrays.fill(mEventCounts, 0);
+
+        // Room for every frame of the run at twice the display rate.
+        final long frameIntervalMs = Math.max(1,
+                Choreographer.getInstance().getFrameIntervalNanos() / 1000000);
+        mFrameIntervals = new long[(int) (2 * mDuration / frameIntervalMs) + 16];
+        mFrameCount = 0;
+        mLastFrameTime = 0;
+        mGeneratorAllocCount = 0;
+        mGeneratorAllocSize = 0;
+        mInOverhead = false;
+
+        mRunning = true;
+        mStartTime = SystemClock.uptimeMillis();
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        schedule(mSignalEvent, mSignalInterval);
+        schedule(mBatteryEvent, mBatteryInterval);
+        schedule(mIconsEvent, mIconsInterval);
+        schedule(mNotificationsEvent, mNotificationsInterval);
+        if (mHeadsUpBurst > 0) {
+            schedule(mHeadsUpEvent, mHeadsUpInterval);
+        }
+        mHandler.postDelayed(mFinish, mDuration);
+        Log.i(TAG, "Load started: duration=" + mDuration + "ms seed=" + mSeed);
+        // Counting starts last, so the setup above isn't part of the result.
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+    }
+
+    @SuppressWarnings("deprecation")
+    private void stop(boolean exitDemoMode) {
+        Log.d(TAG, "stop: ");
+        if (!mRunning) return;
+        mRunning = false;
+        final long allocCount = Debug.getThreadAllocCount();
+        final long allocSize = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+        Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        mHandler.removeCallbacks(mSignalEvent);
+        mHandler.removeCallbacks(mBatteryEvent);
+        mHandler.removeCallbacks(mIconsEvent);
+        mHandler.removeCallbacks(mNotificationsEvent);
+        mHandler.removeCallbacks(mHeadsUpEvent);
+        mHandler.removeCallbacks(mFinish);
+
+        mLastResult = formatResult(SystemClock.uptimeMillis() - mStartTime,
+                allocCount - mGeneratorAllocCount, allocSize - mGeneratorAllocSize);
+        Log.i(TAG, "Load finished: " + mLastResult);
+        mFrameIntervals = null;
+
+        for (int i = 0; i < mActiveNotifications.length; i++) {
+            if (mActiveNotifications[i]) {
+                mNotificationManager.cancel(NOTIFICATION_TAG, i);
+            }
+        }
+        for (int i = 0; i < mHeadsUpBurst; i++) {
+            mNotificationManager.cancel(NOTIFICATION_TAG, HEADS_UP_ID_BASE + i);
+        }
+        if (exitDemoMode) {
+            mTarget.dispatchDemoCommand(COMMAND_EXIT, new Bundle());
+        }
+    }
+
+    private void schedule(Runnable event, long interval) {
+        Log.d(TAG, "schedule: ");
+        if (interval > 0) {
+            mHandler.postDelayed(event, interval);
+        }
+    }
+
+    private final Runnable mFinish = new Runnable() {
+        @Override
+        public void run() {
+            stop(true /* exitDemoMode */);
+        }
+    };
+
+    private final Runnable mSignalEvent = new Runnable() {
+        @Override
+        public void run() {
+            mEventCounts[0]++;
+            beginOverhead();
+            final Bundle args = mNetworkArgs;
+            args.clear();
+            if (mRandom.nextBoolean()) {
+                args.putString("wifi", "show");
+            } else {
+                args.putString("mobile", "show");
+                args.putString("datatype", DATA_TYPES[mRandom.nextInt(DATA_TYPES.length)]);
+            }
+            args.putString("level", LEVELS[mRandom.nextInt(LEVELS.length)]);
+            endOverhead();
+            mTarget.dispatchDemoCommand(COMMAND_NETWORK, args);
+            mHandler.postDelayed(this, mSignalInterval);
+        }
+    };
+
+    private final Runnable mBatteryEvent = new Runnable() {
+        @Override
+        public void run() {
+            mEventCounts[1]++;
+            mBatteryLevel = mBatteryLevel > 0 ? mBatteryLevel - 1 : 100;
+            beginOverhead();
+            final Bundle args = mBatteryArgs;
+            args.clear();
+            args.putString("level", BATTERY_LEVELS[mBatteryLevel]);
+            args.putString("plugged", mBatteryLevel < 15 ? "true" : "false");
+            endOverhead();
+            mTarget.dispatchDemoCommand(COMMAND_BATTERY, args);
+            mHandler.postDelayed(this, mBatteryInterval);
+        }
+    };
+
+    private final Runnable mIconsEvent = new Runnable() {
+        @Override
+        public void run() {
+            mEventCounts[2]++;
+            beginOverhead();
+            final Bundle args = mStatusArgs;
+            args.clear();
+            final String slot = STATUS_SLOTS[mRandom.nextInt(STATUS_SLOTS.length)];
+            String value = "hide";
+            if (mRandom.nextBoolean()) {
+                value = slot.equals("bluetooth")
+                        ? STATUS_VALUES_BLUETOOTH[mRandom.nextInt(2)] : "show";
+            }
+            args.putString(slot, value);
+            endOverhead();
+            mTarget.dispatchDemoCommand(COMMAND_STATUS, args);
+            mHandler.postDelayed(this, mIconsInterval);
+        }
+    };
+
+    private final Runnable mNotificationsEvent = new Runnable() {
+        @Override
+        public void run() {
+            mEventCounts[3]++;
+            final int max = mActiveNotifications.length;
+            final boolean post = mActiveCount == 0
+                    || (mActiveCount < max && mRandom.nextBoolean());
+            // Start from a random slot and take the first one in the wanted state.
+            int id = mRandom.nextInt(max);
+            while (mActiveNotifications[id] == post) {
+                id = (id + 1) % max;
+            }
+            beginOverhead();
+            if (post) {
+                postNotification(id, false /* headsUp */);
+                mActiveCount++;
+            } else {
+                mNotificationManager.cancel(NOTIFICATION_TAG, id);
+                mActiveCount--;
+            }
+            mActiveNotifications[id] = post;
+            endOverhead();
+            mHandler.postDelayed(this, mNotificationsInterval);
+        }
+    };
+
+    private final Runnable mHeadsUpEvent = new Runnable() {
+        @Override
+        public void run() {
+            mEventCounts[4]++;
+            beginOverhead();
+            for (int i = 0; i < mHeadsUpBurst; i++) {
+                postNotification(HEADS_UP_ID_BASE + i, true /* headsUp */);
+            }
+            endOverhead();
+            mHandler.postDelayed(this, mHeadsUpInterval);
+        }
+    };
+
+    private void postNotification(int id, boolean headsUp) {
+        Log.d(TAG, "postNotification: ");
+        Notification.Builder builder = new Notification.Builder(mContext)
+                .setSmallIcon(R.drawable.ic_android)
+                .setContentTitle(TAG)
+                .setContentText(Integer.toString(id))
+                .setWhen(System.currentTimeMillis());
+        if (headsUp) {
+            // High priority and noisy, without actually making noise.
+            builder.setPriority(Notification.PRIORITY_MAX)
+                    .setVibrate(new long[] { 0 });
+        }
+        mNotificationManager.notify(NOTIFICATION_TAG, id, builder.build());
+    }
+
+    /**
+     * Starts a stretch of work that is done for the generator rather than by the status bar,
+     * such as building the command arguments and notifications, so its allocations are kept out
+     * of the result. Handling posted notifications comes back through the listener later and is
+     * counted.
+     */
+    @SuppressWarnings("deprecation")
+    public void beginOverhead() {
+        if (!mRunning || mInOverhead) return;
+        mInOverhead = true;
+        mOverheadAllocCount = Debug.getThreadAllocCount();
+        mOverheadAllocSize = Debug.getThreadAllocSize();
+    }
+
+    /**
+     * Ends the stretch started by {@link #beginOverhead}.
+     */
+    @SuppressWarnings("deprecation")
+    public void endOverhead() {
+        if (!mInOverhead) return;
+        mInOverhead = false;
+        if (!mRunning) return;
+        mGeneratorAllocCount += Debug.getThreadAllocCount() - mOverheadAllocCount;
+        mGeneratorAllocSize += Debug.getThreadAllocSize() - mOverheadAllocSize;
+    }
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) return;
+            if (mLastFrameTime != 0 && mFrameCount < mFrameIntervals.length) {
+                mFrameIntervals[mFrameCount++] = frameTimeNanos - mLastFrameTime;
+            }
+            mLastFrameTime = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    private String formatResult(long elapsed, long allocCount, long allocSize) {
+        Log.d(TAG, "formatResult: ");
+        StringBuilder sb = new StringBuilder();
+        sb.append("seed=").append(mSeed).append(" elapsed=").append(elapsed).append("ms");
+        for (int i = 0; i < EVENT_NAMES.length; i++) {
+            sb.append(' ').append(EVENT_NAMES[i]).append('=').append(mEventCounts[i]);
+        }
+        final int n = mFrameCount;
+        sb.append(" frames=").append(n);
+        if (n > 0) {
+            final long[] sorted = Arrays.copyOf(mFrameIntervals, n);
+            Arrays.sort(sorted);
+            final long jankThreshold = Choreographer.getInstance().getFrameIntervalNanos() * 3 / 2;
+            int janky = 0;
+            for (int i = n - 1; i >= 0 && sorted[i] > jankThreshold; i--) {
+                janky++;
+            }
+            sb.append(" p50=").append(percentile(sorted, 50) / 1000)
+                    .append("us p90=").append(percentile(sorted, 90) / 1000)
+                    .append("us p99=").append(percentile(sorted, 99) / 1000)
+                    .append("us max=").append(sorted[n - 1] / 1000)
+                    .append("us janky=").append(janky);
+        }
+        sb.append(" allocs=").append(allocCount).append(" allocBytes=").append(allocSize);
+        return sb.toString();
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100f * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static long toInterval(float perSecond) {
+        return perSecond > 0 ? Math.max(1, (long) (1000 / perSecond)) : 0;
+    }
+
+    private static long getLong(Bundle args, String key, long def) {
+        String value = args.getString(key);
+        if (value == null) return def;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Bad " + key + ": " + value);
+            return def;
+        }
+    }
+
+    private static float getFloat(Bundle args, String key, float def) {
+        String value = args.getString(key);
+        if (value == null) return def;
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Bad " + key + ": " + value);
+            return def;
+        }
+    }
+
+    public void dump(PrintWriter pw) {
+        pw.print("  DemoLoadGenerator: running="); pw.println(mRunning);
+        if (mLastResult != null) {
+            pw.print("    last run: "); pw.println(mLastResult);
+        }
+    }
+}
@@ -30,6 +30,16 @@ public class IconMerger extends LinearLayout {
 
     private int mIconSize;
     private View mMoreView;
+    private boolean mMoreRequired;
+    private boolean mMoreViewUpdatePosted;
+
+    private final Runnable mUpdateMoreView = new Runnable() {
+        @Override
+        public void run() {
+            mMoreViewUpdatePosted = false;
+            mMoreView.setVisibility(mMoreRequired ? View.VISIBLE : View.GONE);
+        }
+    };
 
     public IconMerger(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -76,13 +86,10 @@ public class IconMerger extends LinearLayout {
         // let's assume we have one more slot if the more icon is already showing
         if (overflowShown) visibleChildren --;
         final boolean moreRequired = visibleChildren * mIconSize > width;
-        if (moreRequired != overflowShown) {
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    mMoreView.setVisibility(moreRequired ? View.VISIBLE : View.GONE);
-                }
-            });
+        mMoreRequired = moreRequired;
+        if (moreRequired != overflowShown && !mMoreViewUpdatePosted) {
+            mMoreViewUpdatePosted = true;
+            post(mUpdateMoreView);
         }
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.statusbar.phone;
+
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * Hands the status bar icon tint to everything that draws with it. The tint and its
+ * ColorStateList are computed once per change and shared by all receivers, and receivers only
+ * hear about actual changes.
+ */
+public class IconTintDistributor {
+    public static final String TAG = "IconTintDistributor";
+
+    private final ArrayList<TintReceiver> mReceivers = new ArrayList<>();
+    private int mTint = Color.WHITE;
+    private float mDarkIntensity;
+    private ColorStateList mTintList = ColorStateList.valueOf(mTint);
+
+    // Time spent dispatching, while a transition runs and in total, per receiver.
+    private final ArrayList<long[]> mReceiverNanos = new ArrayList<>();
+    private boolean mInTransition;
+    private int mTransitionFrames;
+    private long mTransitionNanos;
+    private long mTransitionMaxNanos;
+    private int mLastTransitionFrames;
+    private long mLastTransitionNanos;
+    private long mLastTransitionMaxNanos;
+
+    public void addReceiver(TintReceiver receiver) {
+        Log.d(TAG, "addReceiver: ");
+        mReceivers.add(receiver);
+        mReceiverNanos.add(new long[1]);
+    }
+
+    public void removeReceiver(TintReceiver receiver) {
+        Log.d(TAG, "removeReceiver: ");
+        int index = mReceivers.indexOf(receiver);
+        if (index >= 0) {
+            mReceivers.remove(index);
+            mReceiverNanos.remove(index);
+        }
+    }
+
+    public int getTint() {
+        return mTint;
+    }
+
+    public ColorStateList getTintList() {
+        return mTintList;
+    }
+
+    public float getDarkIntensity() {
+        return mDarkIntensity;
+    }
+
+    /**
+     * Marks the start or end of an animated light/dark transition, so the cost of its frames
+     * can be told apart in dump.
+     */
+    public void setInTransition(boolean inTransition) {
+        Log.d(TAG, "setInTransition: ");
+        if (mInTransition == inTransition) return;
+        mInTransition = inTransition;
+        if (inTransition) {
+            mTransitionFrames = 0;
+            mTransitionNanos = 0;
+            mTransitionMaxNanos = 0;
+        } else {
+            mLastTransitionFrames = mTransitionFrames;
+            mLastTransitionNanos = mTransitionNanos;
+            mLastTransitionMaxNanos = mTransitionMaxNanos;
+        }
+    }
+
+    public void setTint(int tint, float darkIntensity) {
+        Log.d(TAG, "setTint: ");
+        if (tint == mTint && darkIntensity == mDarkIntensity) {
+            return;
+        }
+        if (tint != mTint) {
+            mTint = tint;
+            mTintList = ColorStateList.valueOf(tint);
+        }
+        mDarkIntensity = darkIntensity;
+        dispatch();
+    }
+
+    private void dispatch() {
+        final long start = SystemClock.elapsedRealtimeNanos();
+        long last = start;
+        final int N = mReceivers.size();
+        for (int i = 0; i < N; i++) {
+            mReceivers.get(i).onTintChanged(mTint, mTintList, mDarkIntensity);
+            final long now = SystemClock.elapsedRealtimeNanos();
+            mReceiverNanos.get(i)[0] += now - last;
+            last = now;
+        }
+        if (mInTransition) {
+            final long took = last - start;
+            mTransitionFrames++;
+            mTransitionNanos += took;
+            mTransitionMaxNanos = Math.max(mTransitionMaxNanos, took);
+        }
+    }
+
+    public void dump(PrintWriter pw) {
+        pw.print("  IconTintDistributor: tint=#"); pw.print(Integer.toHexString(mTint));
+        pw.print(" darkIntensity="); pw.println(mDarkIntensity);
+        pw.print("    last transition: frames="); pw.print(mLastTransitionFrames);
+        pw.print(" avg="); pw.print(mLastTransitionFrames > 0
+                ? mLastTransitionNanos / mLastTransitionFrames / 1000 : 0);
+        pw.print("us max="); pw.print(mLastTransitionMaxNanos / 1000); pw.println("us");
+        for (int i = 0; i < mReceivers.size(); i++) {
+            pw.print("    "); pw.print(mReceivers.get(i));
+            pw.print(": total="); pw.print(mReceiverNanos.get(i)[0] / 1000); pw.println("us");
+        }
+    }
+
+    public interface TintReceiver {
+        /**
+         * @param tintList shared by all receivers for this tint, don't modify it
+         */
+        void onTintChanged(int tint, ColorStateList tintList, float darkIntensity);
+    }
+}
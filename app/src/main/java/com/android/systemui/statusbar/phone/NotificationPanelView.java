@@ -237,7 +237,18 @@ public class NotificationPanelView extends PanelView implements
         mKeyguardStatusBar = (KeyguardStatusBarView) findViewById(R.id.keyguard_header);
         mKeyguardStatusView = (KeyguardStatusView) findViewById(R.id.keyguard_status_view);
         mQsContainer = (QSContainer) findViewById(R.id.quick_settings_container);
-        mQsPanel = (QSPanel) findViewById(R.id.quick_settings_panel);
+        mQsContainer.addOnInflateListener(new QSContainer.OnInflateListener() {
+            @Override
+            public void onQsPanelInflated(QSPanel panel) {
+                Log.d(TAG, "onQsPanelInflated: ");
+                mQsPanel = panel;
+                mQsPanel.setExpanded(mQsExpanded);
+                mQsPanel.setVisibility(
+                        mQsExpanded || mStackScrollerOverscrolling || mHeaderAnimating
+                                ? View.VISIBLE
+                                : View.INVISIBLE);
+            }
+        });
         mClockView = (TextView) findViewById(R.id.clock_view);
         mScrollView = (ObservableScrollView) findViewById(R.id.scroll_view);
         mScrollView.setListener(this);
@@ -1026,7 +1037,11 @@ public class NotificationPanelView extends PanelView implements
             requestPanelHeightUpdate();
             mNotificationStackScroller.setInterceptDelegateEnabled(expanded);
             mStatusBar.setQsExpanded(expanded);
-            mQsPanel.setExpanded(expanded);
+            if (expanded) {
+                mQsContainer.getQsPanel().setExpanded(true);
+            } else if (mQsPanel != null) {
+                mQsPanel.setExpanded(false);
+            }
             mNotificationContainerParent.setQsExpanded(expanded);
         }
     }
@@ -1308,7 +1323,9 @@ public class NotificationPanelView extends PanelView implements
         mNotificationStackScroller.setScrollingEnabled(
                 mStatusBarState != StatusBarState.KEYGUARD && (!mQsExpanded
                         || mQsExpansionFromOverscroll));
-        mQsPanel.setVisibility(expandVisually ? View.VISIBLE : View.INVISIBLE);
+        if (mQsPanel != null) {
+            mQsPanel.setVisibility(expandVisually ? View.VISIBLE : View.INVISIBLE);
+        }
         mQsContainer.setVisibility(
                 mKeyguardShowing && !expandVisually ? View.INVISIBLE : View.VISIBLE);
         mScrollView.setTouchEnabled(mQsExpanded);
@@ -1847,6 +1864,9 @@ public class NotificationPanelView extends PanelView implements
     protected void onExpandingStarted() {
         super.onExpandingStarted();
         Log.d(TAG, "onExpandingStarted: ");
+        // First use of the QS panel, unless it was inflated ahead of time. Its height has to be
+        // known before QS can be expanded.
+        mQsContainer.getQsPanel();
         mNotificationStackScroller.onExpansionStarted();
         mIsExpanding = true;
         mQsExpandedWhenExpandingStarted = mQsFullyExpanded;
@@ -1882,6 +1902,7 @@ public class NotificationPanelView extends PanelView implements
             });
         } else {
             setListening(true);
+            mQsPanel.prepareBrightnessMirror();
         }
         mQsExpandImmediate = false;
         mTwoFingerQsExpandPossible = false;
@@ -1895,7 +1916,12 @@ public class NotificationPanelView extends PanelView implements
         Log.d(TAG, "setListening: ");
         mHeader.setListening(listening);
         mKeyguardStatusBar.setListening(listening);
-        mQsPanel.setListening(listening);
+        if (listening) {
+            // First use of the QS panel, unless it was inflated ahead of time
+            mQsContainer.getQsPanel().setListening(true);
+        } else if (mQsPanel != null) {
+            mQsPanel.setListening(false);
+        }
     }
 
     @Override
@@ -2251,12 +2277,14 @@ public class NotificationPanelView extends PanelView implements
 
     public boolean isQsDetailShowing() {
         Log.d(TAG, "isQsDetailShowing: ");
-        return mQsPanel.isShowingDetail();
+        return mQsPanel != null && mQsPanel.isShowingDetail();
     }
 
     public void closeQsDetail() {
         Log.d(TAG, "closeQsDetail: ");
-        mQsPanel.closeDetail();
+        if (mQsPanel != null) {
+            mQsPanel.closeDetail();
+        }
     }
 
     @Override
@@ -104,14 +104,17 @@ import com.android.keyguard.KeyguardUpdateMonitorCallback;
 import com.android.keyguard.ViewMediatorCallback;
 import com.android.systemui.BatteryMeterView;
 import com.android.systemui.DemoMode;
+import com.android.systemui.DejankUtils;
 import com.android.systemui.EventLogConstants;
 import com.android.systemui.EventLogTags;
 import com.android.systemui.Prefs;
 import com.android.systemui.R;
+import com.android.systemui.StartupTimeline;
 import com.android.systemui.assist.AssistManager;
 import com.android.systemui.doze.DozeHost;
 import com.android.systemui.doze.DozeLog;
 import com.android.systemui.keyguard.KeyguardViewMediator;
+import com.android.systemui.qs.QSContainer;
 import com.android.systemui.qs.QSPanel;
 import com.android.systemui.recents.ScreenPinningRequest;
 import com.android.systemui.statusbar.ActivatableNotificationView;
@@ -302,7 +305,10 @@ public class PhoneStatusBar extends BaseStatusBar implements DemoMode,
     TextView mNotificationPanelDebugText;
 
     // settings
+    private QSContainer mQSContainer;
+    // Null until the panel is first used or inflated ahead of that, see QSContainer.
     private QSPanel mQSPanel;
+    private QSTileHost mQSTileHost;
 
     // top bar
     StatusBarHeaderView mHeader;
@@ -662,7 +668,9 @@ public class PhoneStatusBar extends BaseStatusBar implements DemoMode,
         }
         mUnlockMethodCache = UnlockMethodCache.getInstance(mContext);
         mUnlockMethodCache.addListener(this);
+        final long keyguardStart = SystemClock.uptimeMillis();
         startKeyguard();
+        StartupTimeline.tracePhase("startKeyguard", keyguardStart);
 
         mDozeServiceHost = new DozeServiceHost();
         KeyguardUpdateMonitor.getInstance(mContext).registerCallback(mDozeServiceHost);
@@ -870,9 +878,13 @@ public class PhoneStatusBar extends BaseStatusBar implements DemoMode,
                 // noop
             }
         });
+        long traceStart = SystemClock.uptimeMillis();
         mNetworkController = new NetworkControllerImpl(mContext, mHandlerThread.getLooper());
+        StartupTimeline.tracePhase("NetworkControllerImpl", traceStart);
         mHotspotController = new HotspotControllerImpl(mContext);
+        traceStart = SystemClock.uptimeMillis();
         mBluetoothController = new BluetoothControllerImpl(mContext, mHandlerThread.getLooper());
+        StartupTimeline.tracePhase("BluetoothControllerImpl", traceStart);
         mSecurityController = new SecurityControllerImpl(mContext);
         if (mContext.getResources().getBoolean(R.bool.config_showRotationLock)) {
             mRotationLockController = new RotationLockControllerImpl(mContext);
@@ -922,23 +934,37 @@ public class PhoneStatusBar extends BaseStatusBar implements DemoMode,
 
 
         // Set up the quick settings tile panel
-        mQSPanel = (QSPanel) mStatusBarWindow.findViewById(R.id.quick_settings_panel);
-        if (mQSPanel != null) {
+        mQSContainer = (QSContainer) mStatusBarWindow.findViewById(
+                R.id.quick_settings_container);
+        if (mQSContainer != null) {
+            traceStart = SystemClock.uptimeMillis();
             final QSTileHost qsh = new QSTileHost(mContext, this,
                     mBluetoothController, mLocationController, mRotationLockController,
                     mNetworkController, mZenModeController, mHotspotController, 
                     mCastController, mFlashlightController,
                     mUserSwitcherController, mKeyguardMonitor,
                     mSecurityController);
-            mQSPanel.setHost(qsh);
-            mQSPanel.setTiles(qsh.getTiles());
+            mQSTileHost = qsh;
+            StartupTimeline.tracePhase("QSTileHost", traceStart);
             mBrightnessMirrorController = new BrightnessMirrorController(mStatusBarWindow);
-            mQSPanel.setBrightnessMirror(mBrightnessMirrorController);
-            mHeader.setQSPanel(mQSPanel);
+            // The panel itself is wired up once it is inflated.
+            mQSContainer.addOnInflateListener(new QSContainer.OnInflateListener() {
+                @Override
+                public void onQsPanelInflated(QSPanel panel) {
+                    Log.d(TAG, "makeStatusBarView: onQsPanelInflated: ");
+                    mQSPanel = panel;
+                    mQSPanel.setHost(qsh);
+                    mQSPanel.setTiles(qsh.getTiles());
+                    mQSPanel.setBrightnessMirror(mBrightnessMirrorController);
+                    mHeader.setQSPanel(mQSPanel);
+                }
+            });
             qsh.setCallback(new QSTileHost.Callback() {
                 @Override
                 public void onTilesChanged() {
-                    mQSPanel.setTiles(qsh.getTiles());
+                    if (mQSPanel != null) {
+                        mQSPanel.setTiles(qsh.getTiles());
+                    }
                     Log.d(TAG, "makeStatusBarView: setCallback: onTilesChanged: tiles = " + qsh.getTiles());
 
                 }
@@ -2981,6 +3007,14 @@ public class PhoneStatusBar extends BaseStatusBar implements DemoMode,
 
         DozeLog.dump(pw);
 
+        if (mCommandQueue != null) {
+            mCommandQueue.dump(pw);
+        }
+
+        if (mDemoLoadGenerator != null) {
+            mDemoLoadGenerator.dump(pw);
+        }
+
         if (DUMPTRUCK) {
             synchronized (mNotificationData) {
                 mNotificationData.dump(pw, "  ");
@@ -3037,6 +3071,9 @@ public class PhoneStatusBar extends BaseStatusBar implements DemoMode,
         if (mSecurityController != null) {
             mSecurityController.dump(fd, pw, args);
         }
+        if (mQSTileHost != null) {
+            mQSTileHost.dump(fd, pw, args);
+        }
         if (mHeadsUpManager != null) {
             mHeadsUpManager.dump(fd, pw, args);
         } else {
@@ -3075,9 +3112,25 @@ public class PhoneStatusBar extends BaseStatusBar implements DemoMode,
 
     private void addStatusBarWindow() {
         Log.d(TAG, "addStatusBarWindow: ");
+        long start = SystemClock.uptimeMillis();
         makeStatusBarView();
+        StartupTimeline.tracePhase("makeStatusBarView", start);
+        start = SystemClock.uptimeMillis();
         mStatusBarWindowManager = new StatusBarWindowManager(mContext);
         mStatusBarWindowManager.add(mStatusBarWindow, getStatusBarHeight());
+        StartupTimeline.tracePhase("addStatusBarWindow", start);
+
+        if (mQSContainer != null) {
+            // Inflate the QS panel once the first frame is out and the main thread is idle, so
+            // the first pull down doesn't have to.
+            DejankUtils.postAfterTraversal(new Runnable() {
+                @Override
+                public void run() {
+                    Log.d(TAG, "addStatusBarWindow: run: ");
+                    mQSContainer.inflateWhenIdle();
+                }
+            });
+        }
     }
 
     // called by makeStatusbar and also by PhoneStatusBarView
@@ -3609,13 +3662,14 @@ public class PhoneStatusBar extends BaseStatusBar implements DemoMode,
         mNetworkController.removeSignalCallback(signalCluster);
         mNetworkController.removeSignalCallback(signalClusterKeyguard);
         mNetworkController.removeSignalCallback(signalClusterQs);
-        if (mQSPanel != null && mQSPanel.getHost() != null) {
-            mQSPanel.getHost().destroy();
+        if (mQSTileHost != null) {
+            mQSTileHost.destroy();
         }
     }
 
     private boolean mDemoModeAllowed;
     private boolean mDemoMode;
+    private DemoLoadGenerator mDemoLoadGenerator;
 
     @Override
     public void dispatchDemoCommand(String command, Bundle args) {
@@ -3651,6 +3705,13 @@ public class PhoneStatusBar extends BaseStatusBar implements DemoMode,
         if (mNetworkController != null && (modeChange || command.equals(COMMAND_NETWORK))) {
             mNetworkController.dispatchDemoCommand(command, args);
         }
+        if (command.equals(COMMAND_LOAD)
+                || (command.equals(COMMAND_EXIT) && mDemoLoadGenerator != null)) {
+            if (mDemoLoadGenerator == null) {
+                mDemoLoadGenerator = new DemoLoadGenerator(mContext, this);
+            }
+            mDemoLoadGenerator.dispatchDemoCommand(command, args);
+        }
         if (modeChange || command.equals(COMMAND_NOTIFICATIONS)) {
             View notifications = mStatusBarView == null ? null
                     : mStatusBarView.findViewById(R.id.notification_icon_area);
@@ -3681,8 +3742,11 @@ public class PhoneStatusBar extends BaseStatusBar implements DemoMode,
     }
 
     private void dispatchDemoCommandToView(String command, Bundle args, int id) {
+        // Keep the log strings out of a running load's allocation count
+        if (mDemoLoadGenerator != null) mDemoLoadGenerator.beginOverhead();
         Log.d(TAG, "dispatchDemoCommandToView: command = " + command);
         Log.d(TAG, "dispatchDemoCommandToView: id = " + id);
+        if (mDemoLoadGenerator != null) mDemoLoadGenerator.endOverhead();
         if (mStatusBarView == null) return;
         View v = mStatusBarView.findViewById(id);
         if (v instanceof DemoMode) {
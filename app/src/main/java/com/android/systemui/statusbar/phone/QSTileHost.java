@@ -53,6 +53,8 @@ import com.android.systemui.statusbar.policy.ZenModeController;
 import com.android.systemui.tuner.TunerService;
 import com.android.systemui.tuner.TunerService.Tunable;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -85,6 +87,7 @@ public class QSTileHost implements QSTile.Host, Tunable {
     private final SecurityController mSecurity;
 
     private Callback mCallback;
+    private boolean mTilesCreated;
 
     public QSTileHost(Context context, PhoneStatusBar statusBar,
             BluetoothController bluetooth, LocationController location,
@@ -118,6 +121,11 @@ public class QSTileHost implements QSTile.Host, Tunable {
     public void destroy() {
         Log.d(TAG, "destroy: ");
         TunerService.get(mContext).removeTunable(this);
+        // Destroying a tile quits its looper
+        for (QSTile<?> tile : mTiles.values()) {
+            tile.destroy();
+        }
+        mLooper.quitSafely();
     }
 
     @Override
@@ -162,6 +170,19 @@ public class QSTileHost implements QSTile.Host, Tunable {
         return mLooper;
     }
 
+    /**
+     * Starts a looper for a single tile, which quits it when it is destroyed.  A tile blocked on a
+     * slow service call then only delays itself, and its handlers can still use Handler and Toast.
+     */
+    @Override
+    public Looper createTileLooper(String name) {
+        Log.d(TAG, "createTileLooper: ");
+        final HandlerThread ht = new HandlerThread(QSTileHost.class.getSimpleName() + "." + name,
+                Process.THREAD_PRIORITY_BACKGROUND);
+        ht.start();
+        return ht.getLooper();
+    }
+
     @Override
     public Context getContext() {
         Log.d(TAG, "getContext: ");
@@ -241,6 +262,28 @@ public class QSTileHost implements QSTile.Host, Tunable {
         if (DEBUG) Log.d(TAG, "Recreating tiles");
         final List<String> tileSpecs = loadTileSpecs(newValue);
         if (tileSpecs.equals(mTileSpecs)) return;
+        if (!mTilesCreated) {
+            // Only remember the specs, the tiles are built by createTilesIfNeeded().
+            mTileSpecs.clear();
+            mTileSpecs.addAll(tileSpecs);
+            return;
+        }
+        recreateTiles(tileSpecs);
+    }
+
+    /**
+     * Builds the tiles for the current specs the first time it is called. Tile construction
+     * registers with a number of controllers, so it is deferred until the panel is first shown.
+     */
+    public void createTilesIfNeeded() {
+        Log.d(TAG, "createTilesIfNeeded: ");
+        if (mTilesCreated) return;
+        mTilesCreated = true;
+        recreateTiles(new ArrayList<>(mTileSpecs));
+    }
+
+    private void recreateTiles(List<String> tileSpecs) {
+        Log.d(TAG, "recreateTiles: ");
         for (Map.Entry<String, QSTile<?>> tile : mTiles.entrySet()) {
             if (!tileSpecs.contains(tile.getKey())) {
                 if (DEBUG) Log.d(TAG, "Destroying tile: " + tile.getKey());
@@ -269,6 +312,22 @@ public class QSTileHost implements QSTile.Host, Tunable {
         }
     }
 
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("QSTileHost state:");
+        pw.print("  mTilesCreated="); pw.println(mTilesCreated);
+        pw.print("  mTileSpecs="); pw.println(mTileSpecs);
+        for (Map.Entry<String, QSTile<?>> tile : mTiles.entrySet()) {
+            final QSTile<?> t = tile.getValue();
+            pw.print("  "); pw.print(tile.getKey());
+            pw.print(" listening="); pw.print(t.isPanelListening());
+            pw.print(" listeningTime="); pw.print(t.getListeningTime()); pw.println("ms");
+            pw.print("    handler latency: "); t.getHandlerLatency().dump(pw);
+        }
+        if (mNetwork != null) {
+            mNetwork.getMobileDataController().dump(pw);
+        }
+    }
+
     protected QSTile<?> createTile(String tileSpec) {
         Log.d(TAG, "createTile: ");
         if (tileSpec.equals("wifi")) return new WifiTile(this);
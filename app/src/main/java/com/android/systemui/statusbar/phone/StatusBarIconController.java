@@ -16,11 +16,13 @@
 
 package com.android.systemui.statusbar.phone;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.ArgbEvaluator;
 import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.ColorStateList;
-import android.graphics.Color;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.SystemClock;
@@ -81,8 +83,13 @@ public class StatusBarIconController implements Tunable {
     private int mIconSize;
     private int mIconHPadding;
 
-    private int mIconTint = Color.WHITE;
-    private float mDarkIntensity;
+    // Reused across updateNotificationIcons calls, which run on every notification change.
+    private LinearLayout.LayoutParams mNotificationIconParams;
+    private final ArrayList<StatusBarIconView> mIconsToShow = new ArrayList<>();
+    private final ArraySet<View> mShownIcons = new ArraySet<>();
+
+    // Holds the current tint and dark intensity, and applies them to everything registered.
+    private final IconTintDistributor mTintDistributor = new IconTintDistributor();
 
     private boolean mTransitionPending;
     private boolean mTintChangePending;
@@ -130,6 +137,11 @@ public class StatusBarIconController implements Tunable {
         mHandler = new Handler();
         updateResources();
 
+        mTintDistributor.addReceiver(mSystemIconsTintReceiver);
+        mTintDistributor.addReceiver(mNotificationIconsTintReceiver);
+        mTintDistributor.addReceiver(mSignalCluster);
+        mTintDistributor.addReceiver(mMiscTintReceiver);
+
         TunerService.get(mContext).addTunable(this, ICON_BLACKLIST);
     }
 
@@ -170,13 +182,13 @@ public class StatusBarIconController implements Tunable {
         boolean blocked = mIconBlacklist.contains(slot);
         StatusBarIconView view = new StatusBarIconView(mContext, slot, null, blocked);
         view.set(icon);
+        view.setImageTintList(mTintDistributor.getTintList());
         mStatusIcons.addView(view, viewIndex, new LinearLayout.LayoutParams(
                 ViewGroup.LayoutParams.WRAP_CONTENT, mIconSize));
         view = new StatusBarIconView(mContext, slot, null, blocked);
         view.set(icon);
         mStatusIconsKeyguard.addView(view, viewIndex, new LinearLayout.LayoutParams(
                 ViewGroup.LayoutParams.WRAP_CONTENT, mIconSize));
-        applyIconTint();
     }
 
     public void updateSystemIcon(String slot, int index, int viewIndex,
@@ -186,7 +198,7 @@ public class StatusBarIconController implements Tunable {
         view.set(icon);
         view = (StatusBarIconView) mStatusIconsKeyguard.getChildAt(viewIndex);
         view.set(icon);
-        applyIconTint();
+        // The tint list is kept across drawable changes, nothing to reapply.
     }
 
     public void removeSystemIcon(String slot, int index, int viewIndex) {
@@ -197,13 +209,20 @@ public class StatusBarIconController implements Tunable {
 
     public void updateNotificationIcons(NotificationData notificationData) {
         Log.d(TAG, "updateNotificationIcons: ");
-        final LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
-                mIconSize + 2*mIconHPadding, mPhoneStatusBar.getStatusBarHeight());
+        final int iconWidth = mIconSize + 2 * mIconHPadding;
+        final int iconHeight = mPhoneStatusBar.getStatusBarHeight();
+        if (mNotificationIconParams == null || mNotificationIconParams.width != iconWidth
+                || mNotificationIconParams.height != iconHeight) {
+            mNotificationIconParams = new LinearLayout.LayoutParams(iconWidth, iconHeight);
+        }
 
         ArrayList<NotificationData.Entry> activeNotifications =
                 notificationData.getActiveNotifications();
         final int N = activeNotifications.size();
-        ArrayList<StatusBarIconView> toShow = new ArrayList<>(N);
+        final ArrayList<StatusBarIconView> toShow = mIconsToShow;
+        final ArraySet<View> shown = mShownIcons;
+        toShow.clear();
+        shown.clear();
 
         // Filter out ambient notifications and notification children.
         for (int i = 0; i < N; i++) {
@@ -216,41 +235,34 @@ public class StatusBarIconController implements Tunable {
                 continue;
             }
             toShow.add(ent.icon);
+            shown.add(ent.icon);
         }
 
-        ArrayList<View> toRemove = new ArrayList<>();
-        for (int i=0; i<mNotificationIcons.getChildCount(); i++) {
-            View child = mNotificationIcons.getChildAt(i);
-            if (!toShow.contains(child)) {
-                toRemove.add(child);
-            }
-        }
-
-        final int toRemoveCount = toRemove.size();
-        for (int i = 0; i < toRemoveCount; i++) {
-            mNotificationIcons.removeView(toRemove.get(i));
-        }
-
-        for (int i=0; i<toShow.size(); i++) {
-            View v = toShow.get(i);
-            if (v.getParent() == null) {
-                mNotificationIcons.addView(v, i, params);
+        // Drop icons that went away, then walk the new sequence once and only touch positions
+        // that differ. Icons that were already in the strip keep their params, and are only
+        // tinted again if their drawable has changed.
+        for (int i = mNotificationIcons.getChildCount() - 1; i >= 0; i--) {
+            if (!shown.contains(mNotificationIcons.getChildAt(i))) {
+                mNotificationIcons.removeViewAt(i);
             }
         }
-
-        // Resort notification icons
-        final int childCount = mNotificationIcons.getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            View actual = mNotificationIcons.getChildAt(i);
+        final int showCount = toShow.size();
+        for (int i = 0; i < showCount; i++) {
             StatusBarIconView expected = toShow.get(i);
-            if (actual == expected) {
+            applyNotificationIconTint(expected, mTintDistributor.getTintList());
+            if (i < mNotificationIcons.getChildCount()
+                    && mNotificationIcons.getChildAt(i) == expected) {
                 continue;
             }
-            mNotificationIcons.removeView(expected);
-            mNotificationIcons.addView(expected, i);
+            if (expected.getParent() == null) {
+                mNotificationIcons.addView(expected, i, mNotificationIconParams);
+            } else {
+                mNotificationIcons.removeView(expected);
+                mNotificationIcons.addView(expected, i);
+            }
         }
-
-        applyNotificationIconsTint();
+        toShow.clear();
+        shown.clear();
     }
 
     public void hideSystemIconArea(boolean animate) {
@@ -286,6 +298,7 @@ public class StatusBarIconController implements Tunable {
             StatusBarIconView ic = (StatusBarIconView) mStatusIcons.getChildAt(i);
             pw.println("    [" + i + "] icon=" + ic);
         }
+        mTintDistributor.dump(pw);
     }
 
     public void dispatchDemoCommand(String command, Bundle args) {
@@ -373,16 +386,28 @@ public class StatusBarIconController implements Tunable {
         if (mTintAnimator != null) {
             mTintAnimator.cancel();
         }
-        if (mDarkIntensity == targetDarkIntensity) {
+        float darkIntensity = mTintDistributor.getDarkIntensity();
+        if (darkIntensity == targetDarkIntensity) {
             return;
         }
-        mTintAnimator = ValueAnimator.ofFloat(mDarkIntensity, targetDarkIntensity);
+        mTintAnimator = ValueAnimator.ofFloat(darkIntensity, targetDarkIntensity);
         mTintAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
                 setIconTintInternal((Float) animation.getAnimatedValue());
             }
         });
+        mTintAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationStart(Animator animation) {
+                mTintDistributor.setInTransition(true);
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                mTintDistributor.setInTransition(false);
+            }
+        });
         mTintAnimator.setDuration(duration);
         mTintAnimator.setStartDelay(delay);
         mTintAnimator.setInterpolator(mFastOutSlowIn);
@@ -391,10 +416,9 @@ public class StatusBarIconController implements Tunable {
 
     private void setIconTintInternal(float darkIntensity) {
         Log.d(TAG, "setIconTintInternal: ");
-        mDarkIntensity = darkIntensity;
-        mIconTint = (int) ArgbEvaluator.getInstance().evaluate(darkIntensity,
+        int tint = (int) ArgbEvaluator.getInstance().evaluate(darkIntensity,
                 mLightModeIconColorSingleTone, mDarkModeIconColorSingleTone);
-        applyIconTint();
+        mTintDistributor.setTint(tint, darkIntensity);
     }
 
     private void deferIconTintChange(float darkIntensity) {
@@ -406,28 +430,78 @@ public class StatusBarIconController implements Tunable {
         mPendingDarkIntensity = darkIntensity;
     }
 
-    private void applyIconTint() {
-        Log.d(TAG, "applyIconTint: ");
-        for (int i = 0; i < mStatusIcons.getChildCount(); i++) {
-            StatusBarIconView v = (StatusBarIconView) mStatusIcons.getChildAt(i);
-            v.setImageTintList(ColorStateList.valueOf(mIconTint));
+    private final IconTintDistributor.TintReceiver mSystemIconsTintReceiver =
+            new IconTintDistributor.TintReceiver() {
+        @Override
+        public void onTintChanged(int tint, ColorStateList tintList, float darkIntensity) {
+            for (int i = 0; i < mStatusIcons.getChildCount(); i++) {
+                StatusBarIconView v = (StatusBarIconView) mStatusIcons.getChildAt(i);
+                if (v.getImageTintList() != tintList) {
+                    v.setImageTintList(tintList);
+                }
+            }
         }
-        mSignalCluster.setIconTint(mIconTint, mDarkIntensity);
-        mMoreIcon.setImageTintList(ColorStateList.valueOf(mIconTint));
-        mBatteryMeterView.setDarkIntensity(mDarkIntensity);
-        mClock.setTextColor(mIconTint);
-        applyNotificationIconsTint();
-    }
 
-    private void applyNotificationIconsTint() {
-        Log.d(TAG, "applyNotificationIconsTint: ");
-        for (int i = 0; i < mNotificationIcons.getChildCount(); i++) {
-            StatusBarIconView v = (StatusBarIconView) mNotificationIcons.getChildAt(i);
-            boolean isPreL = Boolean.TRUE.equals(v.getTag(R.id.icon_is_pre_L));
-            boolean colorize = !isPreL || isGrayscale(v);
-            if (colorize) {
-                v.setImageTintList(ColorStateList.valueOf(mIconTint));
+        @Override
+        public String toString() {
+            return "systemIcons";
+        }
+    };
+
+    private final IconTintDistributor.TintReceiver mNotificationIconsTintReceiver =
+            new IconTintDistributor.TintReceiver() {
+        @Override
+        public void onTintChanged(int tint, ColorStateList tintList, float darkIntensity) {
+            for (int i = 0; i < mNotificationIcons.getChildCount(); i++) {
+                applyNotificationIconTint((StatusBarIconView) mNotificationIcons.getChildAt(i),
+                        tintList);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "notificationIcons";
+        }
+    };
+
+    private final IconTintDistributor.TintReceiver mMiscTintReceiver =
+            new IconTintDistributor.TintReceiver() {
+        @Override
+        public void onTintChanged(int tint, ColorStateList tintList, float darkIntensity) {
+            if (mMoreIcon.getImageTintList() != tintList) {
+                mMoreIcon.setImageTintList(tintList);
             }
+            mBatteryMeterView.setDarkIntensity(darkIntensity);
+            if (mClock.getCurrentTextColor() != tint) {
+                mClock.setTextColor(tintList);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "moreIcon/battery/clock";
+        }
+    };
+
+    /**
+     * Tints a notification icon, unless it already has this tint and its drawable hasn't changed
+     * since it was tinted.
+     */
+    private void applyNotificationIconTint(StatusBarIconView v, ColorStateList tintList) {
+        Log.d(TAG, "applyNotificationIconTint: ");
+        Drawable drawable = v.getDrawable();
+        if (v.getTag(R.id.icon_tinted_drawable) != drawable) {
+            // A new drawable has to be checked for grayscale again
+            v.setTag(R.id.icon_tinted_drawable, drawable);
+            v.setTag(R.id.icon_is_grayscale, null);
+        } else if (v.getImageTintList() == tintList) {
+            return;
+        }
+        boolean isPreL = Boolean.TRUE.equals(v.getTag(R.id.icon_is_pre_L));
+        boolean colorize = !isPreL || isGrayscale(v);
+        ColorStateList iconTintList = colorize ? tintList : null;
+        if (v.getImageTintList() != iconTintList) {
+            v.setImageTintList(iconTintList);
         }
     }
 
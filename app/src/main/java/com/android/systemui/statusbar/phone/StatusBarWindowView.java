@@ -134,7 +134,14 @@ public class StatusBarWindowView extends FrameLayout {
         mStackScrollLayout = (NotificationStackScrollLayout) findViewById(
                 R.id.notification_stack_scroller);
         mNotificationPanel = (NotificationPanelView) findViewById(R.id.notification_panel);
-        mBrightnessMirror = findViewById(R.id.brightness_mirror);
+    }
+
+    /**
+     * Called by BrightnessMirrorController once the mirror has been inflated from its stub.
+     */
+    public void setBrightnessMirror(View brightnessMirror) {
+        Log.d(TAG, "setBrightnessMirror: ");
+        mBrightnessMirror = brightnessMirror;
     }
 
     public void setService(PhoneStatusBar service) {
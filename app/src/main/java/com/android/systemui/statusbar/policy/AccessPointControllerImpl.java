@@ -21,9 +21,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.wifi.WifiManager.ActionListener;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.Settings;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import com.android.settingslib.wifi.AccessPoint;
@@ -34,6 +36,7 @@ import com.android.systemui.R;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class AccessPointControllerImpl
         implements NetworkController.AccessPointController, WifiListener {
@@ -44,6 +47,10 @@ public class AccessPointControllerImpl
     // network credentials.  This is used by quick settings for secured networks.
     private static final String EXTRA_START_CONNECT_SSID = "wifi_start_connect_ssid";
 
+    // A scan is already started when tracking starts, so explicit scan requests arriving shortly
+    // after that or after another request are dropped.
+    private static final long MIN_SCAN_INTERVAL = 5000;
+
     private static final int[] ICONS = {
         R.drawable.ic_qs_wifi_full_0,
         R.drawable.ic_qs_wifi_full_1,
@@ -58,6 +65,13 @@ public class AccessPointControllerImpl
     private final UserManager mUserManager;
 
     private int mCurrentUser;
+    private long mLastScanTime;
+
+    // Snapshot of the access points last dispatched, in order, to diff the next update against.
+    private ArrayList<ApSnapshot> mLastSnapshot = new ArrayList<>();
+    private ArrayMap<String, ApSnapshot> mLastSnapshotByKey = new ArrayMap<>();
+    private int mDispatchedUpdates;
+    private int mSkippedUpdates;
 
     public AccessPointControllerImpl(Context context, Looper bgLooper) {
         mContext = context;
@@ -83,8 +97,12 @@ public class AccessPointControllerImpl
         if (callback == null || mCallbacks.contains(callback)) return;
         if (DEBUG) Log.d(TAG, "addCallback " + callback);
         mCallbacks.add(callback);
+        // Make sure the new callback gets the next update even if nothing changed.
+        mLastSnapshot.clear();
+        mLastSnapshotByKey.clear();
         if (mCallbacks.size() == 1) {
             mWifiTracker.startTracking();
+            mLastScanTime = SystemClock.elapsedRealtime();
         }
     }
 
@@ -102,7 +120,13 @@ public class AccessPointControllerImpl
     @Override
     public void scanForAccessPoints() {
         Log.d(TAG, "scanForAccessPoints: ");
+        final long now = SystemClock.elapsedRealtime();
+        if (mCallbacks.isEmpty() || now - mLastScanTime < MIN_SCAN_INTERVAL) {
+            if (DEBUG) Log.d(TAG, "scan throttled");
+            return;
+        }
         if (DEBUG) Log.d(TAG, "scan!");
+        mLastScanTime = now;
         mWifiTracker.forceScan();
     }
 
@@ -149,8 +173,49 @@ public class AccessPointControllerImpl
         }
     }
 
+    /**
+     * Dispatches {@code aps} only if they differ from what was dispatched last: an access point
+     * was added or removed, the order changed, or one changed its level, security or connection
+     * state.
+     */
+    private void fireAccessPointsChangedIfNeeded(List<AccessPoint> aps) {
+        Log.d(TAG, "fireAccessPointsChangedIfNeeded: ");
+        final ArrayList<ApSnapshot> snapshot = new ArrayList<>(aps.size());
+        final ArrayMap<String, ApSnapshot> snapshotByKey = new ArrayMap<>(aps.size());
+        int added = 0;
+        int changed = 0;
+        boolean reordered = aps.size() != mLastSnapshot.size();
+        for (int i = 0; i < aps.size(); i++) {
+            final ApSnapshot ap = new ApSnapshot(aps.get(i));
+            snapshot.add(ap);
+            snapshotByKey.put(ap.key, ap);
+            final ApSnapshot old = mLastSnapshotByKey.get(ap.key);
+            if (old == null) {
+                added++;
+            } else if (!old.equals(ap)) {
+                changed++;
+            }
+            if (!reordered && !mLastSnapshot.get(i).key.equals(ap.key)) {
+                reordered = true;
+            }
+        }
+        final int removed = mLastSnapshot.size() - (aps.size() - added);
+        mLastSnapshot = snapshot;
+        mLastSnapshotByKey = snapshotByKey;
+        if (DEBUG) Log.d(TAG, "access points added=" + added + " removed=" + removed
+                + " changed=" + changed + " reordered=" + reordered);
+        if (added == 0 && removed == 0 && changed == 0 && !reordered) {
+            mSkippedUpdates++;
+            return;
+        }
+        mDispatchedUpdates++;
+        fireAcccessPointsCallback(aps);
+    }
+
     public void dump(PrintWriter pw) {
         Log.d(TAG, "dump: ");
+        pw.print("  mDispatchedUpdates="); pw.println(mDispatchedUpdates);
+        pw.print("  mSkippedUpdates="); pw.println(mSkippedUpdates);
         mWifiTracker.dump(pw);
     }
 
@@ -162,13 +227,49 @@ public class AccessPointControllerImpl
     @Override
     public void onConnectedChanged() {
         Log.d(TAG, "onConnectedChanged: ");
-        fireAcccessPointsCallback(mWifiTracker.getAccessPoints());
+        fireAccessPointsChangedIfNeeded(mWifiTracker.getAccessPoints());
     }
 
     @Override
     public void onAccessPointsChanged() {
         Log.d(TAG, "onAccessPointsChanged: ");
-        fireAcccessPointsCallback(mWifiTracker.getAccessPoints());
+        fireAccessPointsChangedIfNeeded(mWifiTracker.getAccessPoints());
+    }
+
+    /** The parts of an access point the quick settings detail shows. */
+    private static final class ApSnapshot {
+        final String key;
+        final int level;
+        final boolean active;
+        final String summary;
+
+        ApSnapshot(AccessPoint ap) {
+            key = getKey(ap);
+            level = ap.getLevel();
+            active = ap.isActive();
+            summary = active ? ap.getSummary() : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ApSnapshot)) return false;
+            final ApSnapshot other = (ApSnapshot) o;
+            return key.equals(other.key) && level == other.level && active == other.active
+                    && Objects.equals(summary, other.summary);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+    }
+
+    /**
+     * Returns a key identifying {@code ap} across scans. Security is part of the key, so an
+     * access point changing its security shows up as removed and added.
+     */
+    public static String getKey(AccessPoint ap) {
+        return ap.getSsidStr() + ',' + ap.getSecurity();
     }
 
     private final ActionListener mConnectListener = new ActionListener() {
@@ -17,37 +17,74 @@
 package com.android.systemui.statusbar.policy;
 
 import com.android.systemui.R;
+import com.android.systemui.settings.ToggleSlider;
 import com.android.systemui.statusbar.ScrimView;
 import com.android.systemui.statusbar.phone.PhoneStatusBar;
 import com.android.systemui.statusbar.phone.StatusBarWindowView;
 
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewPropertyAnimator;
+import android.view.ViewStub;
 import android.widget.FrameLayout;
 
 /**
- * Controls showing and hiding of the brightness mirror.
+ * Controls showing and hiding of the brightness mirror. The mirror is only inflated the first
+ * time it is needed, or ahead of that once the main thread is idle after the panel was opened.
  */
 public class BrightnessMirrorController {
     public static final String TAG = "BrightnessMirrorController";
     public long TRANSITION_DURATION_OUT = 150;
     public long TRANSITION_DURATION_IN = 200;
 
+    private final StatusBarWindowView mStatusBarWindow;
     private final ScrimView mScrimBehind;
-    private final View mBrightnessMirror;
+    private final ViewStub mBrightnessMirrorStub;
+    private View mBrightnessMirror;
     private final View mPanelHolder;
     private final int[] mInt2Cache = new int[2];
+    private boolean mIdleInflatePending;
 
     public BrightnessMirrorController(StatusBarWindowView statusBarWindow) {
+        mStatusBarWindow = statusBarWindow;
         mScrimBehind = (ScrimView) statusBarWindow.findViewById(R.id.scrim_behind);
-        mBrightnessMirror = statusBarWindow.findViewById(R.id.brightness_mirror);
+        mBrightnessMirrorStub = (ViewStub) statusBarWindow.findViewById(
+                R.id.brightness_mirror_stub);
         mPanelHolder = statusBarWindow.findViewById(R.id.panel_holder);
     }
 
+    /**
+     * Inflates the mirror the next time the main thread is idle, unless it is already there.
+     */
+    public void inflateWhenIdle() {
+        Log.d(TAG, "inflateWhenIdle: ");
+        if (mBrightnessMirror != null || mIdleInflatePending) {
+            return;
+        }
+        mIdleInflatePending = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                mIdleInflatePending = false;
+                getMirror();
+                return false;
+            }
+        });
+    }
+
+    /**
+     * @return the slider inside the mirror, inflating the mirror if needed
+     */
+    public ToggleSlider getMirrorSlider() {
+        Log.d(TAG, "getMirrorSlider: ");
+        return (ToggleSlider) getMirror().findViewById(R.id.brightness_slider);
+    }
+
     public void showMirror() {
         Log.d(TAG, "showMirror: ");
-        mBrightnessMirror.setVisibility(View.VISIBLE);
+        getMirror().setVisibility(View.VISIBLE);
         mScrimBehind.animateViewAlpha(0.0f, TRANSITION_DURATION_OUT, PhoneStatusBar.ALPHA_OUT);
         outAnimation(mPanelHolder.animate())
                 .withLayer();
@@ -62,7 +99,7 @@ public class BrightnessMirrorController {
             @Override
             public void run() {
                 Log.d(TAG, "hideMirror: run: ");
-                mBrightnessMirror.setVisibility(View.INVISIBLE);
+                getMirror().setVisibility(View.INVISIBLE);
             }
         });
     }
@@ -89,6 +126,7 @@ public class BrightnessMirrorController {
         // positioning.
         int originalX = mInt2Cache[0] + original.getWidth()/2;
         int originalY = mInt2Cache[1];
+        getMirror();
         mBrightnessMirror.setTranslationX(0);
         mBrightnessMirror.setTranslationY(0);
         mBrightnessMirror.getLocationInWindow(mInt2Cache);
@@ -100,11 +138,20 @@ public class BrightnessMirrorController {
 
     public View getMirror() {
         Log.d(TAG, "getMirror: ");
+        if (mBrightnessMirror == null) {
+            mBrightnessMirror = mBrightnessMirrorStub.inflate();
+            mStatusBarWindow.setBrightnessMirror(mBrightnessMirror);
+            updateResources();
+        }
         return mBrightnessMirror;
     }
 
     public void updateResources() {
         Log.d(TAG, "updateResources: ");
+        if (mBrightnessMirror == null) {
+            // Picks up the current resources when it gets inflated.
+            return;
+        }
         FrameLayout.LayoutParams lp =
                 (FrameLayout.LayoutParams) mBrightnessMirror.getLayoutParams();
         lp.width = mBrightnessMirror.getResources().getDimensionPixelSize(
@@ -20,19 +20,27 @@ import android.os.Looper;
 import android.os.Message;
 import android.telephony.SubscriptionInfo;
 import android.util.Log;
+import android.util.SparseArray;
+import android.view.Choreographer;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.systemui.statusbar.policy.NetworkController.IconState;
 import com.android.systemui.statusbar.policy.NetworkController.SignalCallback;
 import com.android.systemui.statusbar.policy.NetworkControllerImpl.EmergencyListener;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 
 /**
  * Implements network listeners and forwards the calls along onto other listeners but on
  * the current or specified Looper.
+ *
+ * Wifi and mobile indicator updates are coalesced: only the latest update per indicator (and
+ * subscription) is kept, it is delivered at most once per frame, and dropped if it equals the
+ * update delivered last.
  */
 public class CallbackHandler extends Handler implements EmergencyListener, SignalCallback {
     public static final String TAG = "CallbackHandler";
@@ -44,19 +52,38 @@ public class CallbackHandler extends Handler implements EmergencyListener, Signa
     private static final int MSG_MOBILE_DATA_ENABLED_CHANGED = 5;
     private static final int MSG_ADD_REMOVE_EMERGENCY        = 6;
     private static final int MSG_ADD_REMOVE_SIGNAL           = 7;
+    private static final int MSG_DELIVER_INDICATORS          = 8;
 
     // All the callbacks.
     private final ArrayList<EmergencyListener> mEmergencyListeners = new ArrayList<>();
     private final ArrayList<SignalCallback> mSignalCallbacks = new ArrayList<>();
 
+    // Latest indicator updates not yet delivered, written from any thread.
+    private final Object mPendingLock = new Object();
+    private WifiIndicators mPendingWifi;
+    private final SparseArray<MobileIndicators> mPendingMobile = new SparseArray<>();
+    private boolean mDeliveryScheduled;
+
+    // Indicator updates last delivered, only touched on the handler's looper.
+    private WifiIndicators mLastWifi;
+    private final SparseArray<MobileIndicators> mLastMobile = new SparseArray<>();
+    private final ArrayList<MobileIndicators> mTmpMobile = new ArrayList<>();
+
+    // Null when not running on a thread with a Choreographer, updates are then posted instead.
+    private final Choreographer mChoreographer;
+    private int mDeliveredUpdates;
+    private int mSuppressedUpdates;
+
     public CallbackHandler() {
         super();
+        mChoreographer = Choreographer.getInstance();
     }
 
     @VisibleForTesting
     CallbackHandler(Looper looper) {
         super(looper);
         Log.d(TAG, "CallbackHandler: ");
+        mChoreographer = null;
     }
 
     @Override
@@ -70,9 +97,13 @@ public class CallbackHandler extends Handler implements EmergencyListener, Signa
                 }
                 break;
             case MSG_SUBS_CHANGED:
+                forgetRemovedSubscriptions((List<SubscriptionInfo>) msg.obj);
                 for (SignalCallback signalCluster : mSignalCallbacks) {
                     signalCluster.setSubs((List<SubscriptionInfo>) msg.obj);
                 }
+                // Indicators of new subscriptions may already be pending, deliver them only
+                // once the callbacks know the subscriptions.
+                deliverIndicators();
                 break;
             case MSG_NO_SIM_VISIBLE_CHANGED:
                 for (SignalCallback signalCluster : mSignalCallbacks) {
@@ -104,13 +135,114 @@ public class CallbackHandler extends Handler implements EmergencyListener, Signa
             case MSG_ADD_REMOVE_SIGNAL:
                 if (msg.arg1 != 0) {
                     mSignalCallbacks.add((SignalCallback) msg.obj);
+                    // The new callback needs the next update even if nothing changed.
+                    mLastWifi = null;
+                    mLastMobile.clear();
                 } else {
                     mSignalCallbacks.remove((SignalCallback) msg.obj);
                 }
                 break;
+            case MSG_DELIVER_INDICATORS:
+                deliverIndicators();
+                break;
+        }
+    }
+
+    /**
+     * Drops the pending and last delivered indicators of subscriptions that went away, so they
+     * are not delivered for a subscription the callbacks no longer know, and are delivered again
+     * if the subscription comes back.
+     */
+    private void forgetRemovedSubscriptions(List<SubscriptionInfo> subs) {
+        for (int i = mLastMobile.size() - 1; i >= 0; i--) {
+            if (!containsSubscription(subs, mLastMobile.keyAt(i))) {
+                mLastMobile.removeAt(i);
+            }
+        }
+        synchronized (mPendingLock) {
+            for (int i = mPendingMobile.size() - 1; i >= 0; i--) {
+                if (!containsSubscription(subs, mPendingMobile.keyAt(i))) {
+                    mPendingMobile.removeAt(i);
+                }
+            }
+        }
+    }
+
+    private static boolean containsSubscription(List<SubscriptionInfo> subs, int subId) {
+        for (int i = 0; i < subs.size(); i++) {
+            if (subs.get(i).getSubscriptionId() == subId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final Choreographer.FrameCallback mDeliverIndicators =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            deliverIndicators();
+        }
+    };
+
+    private void scheduleDeliveryLocked() {
+        if (mDeliveryScheduled) return;
+        mDeliveryScheduled = true;
+        if (mChoreographer != null) {
+            mChoreographer.postFrameCallback(mDeliverIndicators);
+        } else {
+            sendEmptyMessage(MSG_DELIVER_INDICATORS);
         }
     }
 
+    /** Delivers the pending indicator updates that differ from the ones delivered last. */
+    private void deliverIndicators() {
+        Log.d(TAG, "deliverIndicators: ");
+        final WifiIndicators wifi;
+        synchronized (mPendingLock) {
+            if (!mDeliveryScheduled) return;
+            mDeliveryScheduled = false;
+            if (mChoreographer != null) {
+                mChoreographer.removeFrameCallback(mDeliverIndicators);
+            } else {
+                removeMessages(MSG_DELIVER_INDICATORS);
+            }
+            wifi = mPendingWifi;
+            mPendingWifi = null;
+            for (int i = 0; i < mPendingMobile.size(); i++) {
+                mTmpMobile.add(mPendingMobile.valueAt(i));
+            }
+            mPendingMobile.clear();
+        }
+        if (wifi != null) {
+            if (wifi.equals(mLastWifi)) {
+                mSuppressedUpdates++;
+            } else {
+                mLastWifi = wifi;
+                mDeliveredUpdates++;
+                for (SignalCallback callback : mSignalCallbacks) {
+                    callback.setWifiIndicators(wifi.enabled, wifi.statusIcon, wifi.qsIcon,
+                            wifi.activityIn, wifi.activityOut, wifi.description);
+                }
+            }
+        }
+        for (int i = 0; i < mTmpMobile.size(); i++) {
+            final MobileIndicators m = mTmpMobile.get(i);
+            if (m.equals(mLastMobile.get(m.subId))) {
+                mSuppressedUpdates++;
+                continue;
+            }
+            mLastMobile.put(m.subId, m);
+            mDeliveredUpdates++;
+            for (SignalCallback signalCluster : mSignalCallbacks) {
+                signalCluster.setMobileDataIndicators(m.statusIcon, m.qsIcon, m.statusType,
+                        m.qsType, m.activityIn, m.activityOut, m.typeContentDescription,
+                        m.description, m.isWide, m.subId);
+            }
+        }
+        mTmpMobile.clear();
+    }
+
     @Override
     public void setWifiIndicators(final boolean enabled, final IconState statusIcon,
             final IconState qsIcon, final boolean activityIn, final boolean activityOut,
@@ -119,17 +251,15 @@ public class CallbackHandler extends Handler implements EmergencyListener, Signa
         Log.d(TAG, "setWifiIndicators: activityIn = " + activityIn);
         Log.d(TAG, "setWifiIndicators: activityOut = " + activityOut);
         Log.d(TAG, "setWifiIndicators: description = " + description);
-        post(new Runnable() {
-            @Override
-            public void run() {
-                Log.d(TAG, "setWifiIndicators: post: run: ");
-                for (SignalCallback callback : mSignalCallbacks) {
-                    Log.d(TAG, "setWifiIndicators: post: run: for: callback = " + callback);
-                    callback.setWifiIndicators(enabled, statusIcon, qsIcon, activityIn, activityOut,
-                            description);
-                }
+        final WifiIndicators wifi = new WifiIndicators(enabled, statusIcon, qsIcon, activityIn,
+                activityOut, description);
+        synchronized (mPendingLock) {
+            if (mPendingWifi != null) {
+                mSuppressedUpdates++;
             }
-        });
+            mPendingWifi = wifi;
+            scheduleDeliveryLocked();
+        }
     }
 
     @Override
@@ -146,17 +276,16 @@ public class CallbackHandler extends Handler implements EmergencyListener, Signa
         Log.d(TAG, "setMobileDataIndicators: isWide = " + isWide);
         Log.d(TAG, "setMobileDataIndicators: isWide = " + isWide);
         Log.d(TAG, "setMobileDataIndicators: subId = " + subId);
-        post(new Runnable() {
-            @Override
-            public void run() {
-                for (SignalCallback signalCluster : mSignalCallbacks) {
-                    Log.d(TAG, "setMobileDataIndicators: pos: run: for: signalCluster = " + signalCluster);
-                    signalCluster.setMobileDataIndicators(statusIcon, qsIcon, statusType, qsType,
-                            activityIn, activityOut, typeContentDescription, description, isWide,
-                            subId);
-                }
+        final MobileIndicators mobile = new MobileIndicators(statusIcon, qsIcon, statusType,
+                qsType, activityIn, activityOut, typeContentDescription, description, isWide,
+                subId);
+        synchronized (mPendingLock) {
+            if (mPendingMobile.get(subId) != null) {
+                mSuppressedUpdates++;
             }
-        });
+            mPendingMobile.put(subId, mobile);
+            scheduleDeliveryLocked();
+        }
     }
 
     @Override
@@ -205,4 +334,104 @@ public class CallbackHandler extends Handler implements EmergencyListener, Signa
         obtainMessage(MSG_ADD_REMOVE_SIGNAL, listening ? 1 : 0, 0, listener).sendToTarget();
     }
 
+    public void dump(PrintWriter pw) {
+        pw.println("  - CallbackHandler ------");
+        pw.print("  mDeliveredUpdates=");
+        pw.println(mDeliveredUpdates);
+        pw.print("  mSuppressedUpdates=");
+        pw.println(mSuppressedUpdates);
+    }
+
+    private static boolean iconStatesEqual(IconState a, IconState b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        return a.visible == b.visible && a.icon == b.icon
+                && Objects.equals(a.contentDescription, b.contentDescription);
+    }
+
+    private static final class WifiIndicators {
+        final boolean enabled;
+        final IconState statusIcon;
+        final IconState qsIcon;
+        final boolean activityIn;
+        final boolean activityOut;
+        final String description;
+
+        WifiIndicators(boolean enabled, IconState statusIcon, IconState qsIcon,
+                boolean activityIn, boolean activityOut, String description) {
+            this.enabled = enabled;
+            this.statusIcon = statusIcon;
+            this.qsIcon = qsIcon;
+            this.activityIn = activityIn;
+            this.activityOut = activityOut;
+            this.description = description;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WifiIndicators)) return false;
+            final WifiIndicators other = (WifiIndicators) o;
+            return enabled == other.enabled
+                    && activityIn == other.activityIn
+                    && activityOut == other.activityOut
+                    && iconStatesEqual(statusIcon, other.statusIcon)
+                    && iconStatesEqual(qsIcon, other.qsIcon)
+                    && Objects.equals(description, other.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(enabled, activityIn, activityOut, description);
+        }
+    }
+
+    private static final class MobileIndicators {
+        final IconState statusIcon;
+        final IconState qsIcon;
+        final int statusType;
+        final int qsType;
+        final boolean activityIn;
+        final boolean activityOut;
+        final String typeContentDescription;
+        final String description;
+        final boolean isWide;
+        final int subId;
+
+        MobileIndicators(IconState statusIcon, IconState qsIcon, int statusType, int qsType,
+                boolean activityIn, boolean activityOut, String typeContentDescription,
+                String description, boolean isWide, int subId) {
+            this.statusIcon = statusIcon;
+            this.qsIcon = qsIcon;
+            this.statusType = statusType;
+            this.qsType = qsType;
+            this.activityIn = activityIn;
+            this.activityOut = activityOut;
+            this.typeContentDescription = typeContentDescription;
+            this.description = description;
+            this.isWide = isWide;
+            this.subId = subId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MobileIndicators)) return false;
+            final MobileIndicators other = (MobileIndicators) o;
+            return subId == other.subId
+                    && statusType == other.statusType
+                    && qsType == other.qsType
+                    && activityIn == other.activityIn
+                    && activityOut == other.activityOut
+                    && isWide == other.isWide
+                    && iconStatesEqual(statusIcon, other.statusIcon)
+                    && iconStatesEqual(qsIcon, other.qsIcon)
+                    && Objects.equals(typeContentDescription, other.typeContentDescription)
+                    && Objects.equals(description, other.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(subId, statusType, qsType, description);
+        }
+    }
+
 }
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.statusbar.policy;
+
+import android.app.ActivityManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.UserHandle;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.format.DateFormat;
+import android.text.style.CharacterStyle;
+import android.text.style.RelativeSizeSpan;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import libcore.icu.LocaleData;
+
+/**
+ * Process wide time source for the clock and date views. Receives the time broadcasts once and
+ * formats the status bar time at most once per minute for each am/pm style.
+ */
+public class ClockTicker {
+    public static final String TAG = "ClockTicker";
+
+    public static final int AM_PM_STYLE_NORMAL  = 0;
+    public static final int AM_PM_STYLE_SMALL   = 1;
+    public static final int AM_PM_STYLE_GONE    = 2;
+    private static final int AM_PM_STYLE_COUNT  = 3;
+
+    private static final char MAGIC1 = '\uEF00';
+    private static final char MAGIC2 = '\uEF01';
+
+    private static final long MINUTE = 60 * 1000;
+
+    private static ClockTicker sInstance;
+
+    private final Context mContext;
+    private final ArrayList<Callback> mCallbacks = new ArrayList<>();
+    private final Calendar mCalendar = Calendar.getInstance(TimeZone.getDefault());
+
+    // Every format compiled so far, keyed by locale, 24 hour setting and am/pm style.
+    private final ArrayMap<String, SimpleDateFormat> mFormatCache = new ArrayMap<>();
+    // Format per am/pm style for the current locale and 24 hour setting, null until needed.
+    private final SimpleDateFormat[] mFormats = new SimpleDateFormat[AM_PM_STYLE_COUNT];
+    // Formatted time per am/pm style for mTimesMinute, null until needed.
+    private final CharSequence[] mSmallTimes = new CharSequence[AM_PM_STYLE_COUNT];
+    private long mTimesMinute = -1;
+    private boolean mRegistered;
+    // Locale and 24 hour setting mFormats were created for, null until needed.
+    private Locale mFormatLocale;
+    private boolean mFormat24;
+
+    private ClockTicker(Context context) {
+        mContext = context;
+    }
+
+    public static ClockTicker getInstance(Context context) {
+        Log.d(TAG, "getInstance: ");
+        if (sInstance == null) {
+            sInstance = new ClockTicker(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    public void addCallback(Callback callback) {
+        Log.d(TAG, "addCallback: ");
+        mCallbacks.add(callback);
+        if (!mRegistered) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_TIME_TICK);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_CONFIGURATION_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_USER_SWITCHED);
+            mContext.registerReceiverAsUser(mIntentReceiver, UserHandle.ALL, filter, null, null);
+            mRegistered = true;
+            // Whatever changed while nobody was listening.
+            setTimeZone(TimeZone.getDefault());
+            invalidateFormats();
+        }
+    }
+
+    public void removeCallback(Callback callback) {
+        Log.d(TAG, "removeCallback: ");
+        mCallbacks.remove(callback);
+        if (mRegistered && mCallbacks.isEmpty()) {
+            mContext.unregisterReceiver(mIntentReceiver);
+            mRegistered = false;
+        }
+    }
+
+    /**
+     * @return the current time formatted for the status bar. The same instance is returned to
+     *         every caller until the minute changes.
+     */
+    public CharSequence getSmallTime(int amPmStyle) {
+        Log.d(TAG, "getSmallTime: ");
+        final long now = System.currentTimeMillis();
+        final long minute = now / MINUTE;
+        if (minute != mTimesMinute) {
+            mTimesMinute = minute;
+            invalidateTimes();
+        }
+        if (mSmallTimes[amPmStyle] == null) {
+            mCalendar.setTimeInMillis(now);
+            mSmallTimes[amPmStyle] = formatSmallTime(mCalendar.getTime(), amPmStyle);
+        }
+        return mSmallTimes[amPmStyle];
+    }
+
+    /** Formats an arbitrary time without caching the result, e.g. for demo mode. */
+    public CharSequence formatSmallTime(Date time, int amPmStyle) {
+        Log.d(TAG, "formatSmallTime: ");
+        String result = getFormat(amPmStyle).format(time);
+
+        if (amPmStyle != AM_PM_STYLE_NORMAL) {
+            int magic1 = result.indexOf(MAGIC1);
+            int magic2 = result.indexOf(MAGIC2);
+            if (magic1 >= 0 && magic2 > magic1) {
+                SpannableStringBuilder formatted = new SpannableStringBuilder(result);
+                if (amPmStyle == AM_PM_STYLE_GONE) {
+                    formatted.delete(magic1, magic2+1);
+                } else {
+                    if (amPmStyle == AM_PM_STYLE_SMALL) {
+                        CharacterStyle style = new RelativeSizeSpan(0.7f);
+                        formatted.setSpan(style, magic1, magic2,
+                                          Spannable.SPAN_EXCLUSIVE_INCLUSIVE);
+                    }
+                    formatted.delete(magic2, magic2 + 1);
+                    formatted.delete(magic1, magic1 + 1);
+                }
+                return formatted;
+            }
+        }
+
+        return result;
+    }
+
+    private SimpleDateFormat getFormat(int amPmStyle) {
+        Log.d(TAG, "getFormat: ");
+        SimpleDateFormat sdf = mFormats[amPmStyle];
+        if (sdf != null) {
+            return sdf;
+        }
+        if (mFormatLocale == null) {
+            updateFormatSettings();
+        }
+        boolean is24 = mFormat24;
+        Locale locale = mFormatLocale;
+        String key = locale + (is24 ? "/24/" : "/12/") + amPmStyle;
+        sdf = mFormatCache.get(key);
+        if (sdf == null) {
+            LocaleData d = LocaleData.get(locale);
+            String format = is24 ? d.timeFormat_Hm : d.timeFormat_hm;
+            /*
+             * Search for an unquoted "a" in the format string, so we can
+             * add dummy characters around it to let us find it again after
+             * formatting and change its size.
+             */
+            if (amPmStyle != AM_PM_STYLE_NORMAL) {
+                int a = -1;
+                boolean quoted = false;
+                for (int i = 0; i < format.length(); i++) {
+                    char c = format.charAt(i);
+
+                    if (c == '\'') {
+                        quoted = !quoted;
+                    }
+                    if (!quoted && c == 'a') {
+                        a = i;
+                        break;
+                    }
+                }
+
+                if (a >= 0) {
+                    // Move a back so any whitespace before AM/PM is also in the alternate size.
+                    final int b = a;
+                    while (a > 0 && Character.isWhitespace(format.charAt(a-1))) {
+                        a--;
+                    }
+                    format = format.substring(0, a) + MAGIC1 + format.substring(a, b)
+                        + "a" + MAGIC2 + format.substring(b + 1);
+                }
+            }
+            sdf = new SimpleDateFormat(format);
+            sdf.setTimeZone(mCalendar.getTimeZone());
+            mFormatCache.put(key, sdf);
+        }
+        mFormats[amPmStyle] = sdf;
+        return sdf;
+    }
+
+    private void setTimeZone(TimeZone timeZone) {
+        Log.d(TAG, "setTimeZone: ");
+        mCalendar.setTimeZone(timeZone);
+        for (int i = 0; i < mFormatCache.size(); i++) {
+            mFormatCache.valueAt(i).setTimeZone(timeZone);
+        }
+        invalidateTimes();
+    }
+
+    /**
+     * Reads the locale and the 24 hour setting the formats depend on.
+     *
+     * @return whether either changed since the last call
+     */
+    private boolean updateFormatSettings() {
+        Log.d(TAG, "updateFormatSettings: ");
+        final Locale locale = mContext.getResources().getConfiguration().locale;
+        final boolean is24 = DateFormat.is24HourFormat(mContext, ActivityManager.getCurrentUser());
+        if (locale.equals(mFormatLocale) && is24 == mFormat24) {
+            return false;
+        }
+        mFormatLocale = locale;
+        mFormat24 = is24;
+        return true;
+    }
+
+    private void invalidateFormats() {
+        Log.d(TAG, "invalidateFormats: ");
+        updateFormatSettings();
+        for (int i = 0; i < AM_PM_STYLE_COUNT; i++) {
+            mFormats[i] = null;
+        }
+        invalidateTimes();
+    }
+
+    private void invalidateTimes() {
+        Log.d(TAG, "invalidateTimes: ");
+        for (int i = 0; i < AM_PM_STYLE_COUNT; i++) {
+            mSmallTimes[i] = null;
+        }
+    }
+
+    private void notifyCallbacks(boolean formatChanged) {
+        Log.d(TAG, "notifyCallbacks: ");
+        for (int i = 0; i < mCallbacks.size(); i++) {
+            mCallbacks.get(i).onTimeChanged(formatChanged);
+        }
+    }
+
+    private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            Log.d(TAG, "mIntentReceiver: onReceive: action = " + action);
+            if (Intent.ACTION_TIME_TICK.equals(action)) {
+                notifyCallbacks(false /* formatChanged */);
+                return;
+            }
+            if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+                String tz = intent.getStringExtra("time-zone");
+                setTimeZone(TimeZone.getTimeZone(tz));
+            }
+            // Sent for every rotation too, skip it unless the formats depend on what changed.
+            if (Intent.ACTION_CONFIGURATION_CHANGED.equals(action) && !updateFormatSettings()) {
+                return;
+            }
+            // The 24 hour setting, the locale or the user may have changed.
+            invalidateFormats();
+            notifyCallbacks(true /* formatChanged */);
+        }
+    };
+
+    public interface Callback {
+        /**
+         * Called on the main thread when the minute changes or when the time, time zone, locale
+         * or user changes.
+         *
+         * @param formatChanged whether anything other than the current time changed, so cached
+         *                      date formats need to be recreated
+         */
+        void onTimeChanged(boolean formatChanged);
+    }
+}
@@ -16,10 +16,7 @@
 
 package com.android.systemui.statusbar.policy;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.res.TypedArray;
 import android.text.format.DateFormat;
 import android.util.AttributeSet;
@@ -32,7 +29,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 
-public class DateView extends TextView {
+public class DateView extends TextView implements ClockTicker.Callback {
     private static final String TAG = "DateView";
 
     private final Date mCurrentTime = new Date();
@@ -41,25 +38,6 @@ public class DateView extends TextView {
     private String mLastText;
     private String mDatePattern;
 
-    private BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            Log.d(TAG, "mIntentReceiver: onReceive: ");
-            final String action = intent.getAction();
-            if (Intent.ACTION_TIME_TICK.equals(action)
-                    || Intent.ACTION_TIME_CHANGED.equals(action)
-                    || Intent.ACTION_TIMEZONE_CHANGED.equals(action)
-                    || Intent.ACTION_LOCALE_CHANGED.equals(action)) {
-                if (Intent.ACTION_LOCALE_CHANGED.equals(action)
-                        || Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
-                    // need to get a fresh date format
-                    mDateFormat = null;
-                }
-                updateClock();
-            }
-        }
-    };
-
     public DateView(Context context, AttributeSet attrs) {
         super(context, attrs);
         Log.d(TAG, "DateView: ");
@@ -83,12 +61,7 @@ public class DateView extends TextView {
         super.onAttachedToWindow();
         Log.d(TAG, "onAttachedToWindow: ");
 
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(Intent.ACTION_TIME_TICK);
-        filter.addAction(Intent.ACTION_TIME_CHANGED);
-        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
-        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
-        getContext().registerReceiver(mIntentReceiver, filter, null, null);
+        ClockTicker.getInstance(getContext()).addCallback(this);
 
         updateClock();
     }
@@ -98,7 +71,17 @@ public class DateView extends TextView {
         super.onDetachedFromWindow();
         Log.d(TAG, "onDetachedFromWindow: ");
         mDateFormat = null; // reload the locale next time
-        getContext().unregisterReceiver(mIntentReceiver);
+        ClockTicker.getInstance(getContext()).removeCallback(this);
+    }
+
+    @Override
+    public void onTimeChanged(boolean formatChanged) {
+        Log.d(TAG, "onTimeChanged: ");
+        if (formatChanged) {
+            // need to get a fresh date format
+            mDateFormat = null;
+        }
+        updateClock();
     }
 
     protected void updateClock() {
@@ -31,14 +31,20 @@ import android.net.NetworkPolicy;
 import android.net.NetworkPolicyManager;
 import android.net.NetworkStatsHistory;
 import android.net.NetworkTemplate;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
 import android.os.RemoteException;
 import android.os.ServiceManager;
+import android.os.SystemClock;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.text.format.DateUtils;
 import android.text.format.Time;
 import android.util.Log;
 
+import java.io.PrintWriter;
 import java.util.Date;
 import java.util.Locale;
 
@@ -48,6 +54,8 @@ public class MobileDataControllerImpl implements NetworkController.MobileDataCon
 
     private static final long DEFAULT_WARNING_LEVEL = 2L * 1024 * 1024 * 1024;
     private static final int FIELDS = FIELD_RX_BYTES | FIELD_TX_BYTES;
+    // Usage queried more recently than this is served from the cache by refreshDataUsageInfo.
+    private static final long MIN_REFRESH_INTERVAL = 30 * 1000;
     private static final StringBuilder PERIOD_BUILDER = new StringBuilder(50);
     private static final java.util.Formatter PERIOD_FORMATTER = new java.util.Formatter(
             PERIOD_BUILDER, Locale.getDefault());
@@ -57,13 +65,32 @@ public class MobileDataControllerImpl implements NetworkController.MobileDataCon
     private final ConnectivityManager mConnectivityManager;
     private final INetworkStatsService mStatsService;
     private final NetworkPolicyManager mPolicyManager;
+    private final Handler mBgHandler;
+
+    // Last usage queried, guarded by mUsageLock.
+    private final Object mUsageLock = new Object();
+    private DataUsageInfo mCachedUsage;
+    private String mCachedSubscriberId;
+    private long mCachedUsageTime;
+    private long mLastQueryDuration;
+    private int mQueryCount;
+    private int mCacheHits;
 
     private INetworkStatsSession mSession;
     private Callback mCallback;
     private NetworkControllerImpl mNetworkController;
 
+    /**
+     * Queries usage on a thread of its own, so that a slow network stats query doesn't hold up
+     * the connectivity and signal broadcasts on the network controller's receiver looper.
+     */
     public MobileDataControllerImpl(Context context) {
+        this(context, startQueryLooper());
+    }
+
+    public MobileDataControllerImpl(Context context, Looper bgLooper) {
         mContext = context;
+        mBgHandler = new Handler(bgLooper);
         mTelephonyManager = TelephonyManager.from(context);
         mConnectivityManager = ConnectivityManager.from(context);
         mStatsService = INetworkStatsService.Stub.asInterface(
@@ -71,6 +98,12 @@ public class MobileDataControllerImpl implements NetworkController.MobileDataCon
         mPolicyManager = NetworkPolicyManager.from(mContext);
     }
 
+    private static Looper startQueryLooper() {
+        final HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        return thread.getLooper();
+    }
+
     public void setNetworkController(NetworkControllerImpl networkController) {
         Log.d(TAG, "setNetworkController: ");
         mNetworkController = networkController;
@@ -119,6 +152,7 @@ public class MobileDataControllerImpl implements NetworkController.MobileDataCon
         if (session == null) {
             return warn("no stats session");
         }
+        final long queryStart = SystemClock.elapsedRealtime();
         NetworkTemplate template = NetworkTemplate.buildTemplateMobileAll(subscriberId);
         template = NetworkTemplate.normalize(template, mTelephonyManager.getMergedSubscriberIds());
 
@@ -170,12 +204,76 @@ public class MobileDataControllerImpl implements NetworkController.MobileDataCon
             if (usage != null) {
                 usage.carrier = mNetworkController.getMobileDataNetworkName();
             }
+            final long queryEnd = SystemClock.elapsedRealtime();
+            synchronized (mUsageLock) {
+                mCachedUsage = usage;
+                mCachedSubscriberId = subscriberId;
+                mCachedUsageTime = queryEnd;
+                mLastQueryDuration = queryEnd - queryStart;
+                mQueryCount++;
+            }
             return usage;
         } catch (RemoteException e) {
             return warn("remote call failed");
         }
     }
 
+    @Override
+    public DataUsageInfo getCachedDataUsageInfo() {
+        Log.d(TAG, "getCachedDataUsageInfo: ");
+        synchronized (mUsageLock) {
+            return mCachedUsage;
+        }
+    }
+
+    @Override
+    public void refreshDataUsageInfo(final DataUsageCallback callback) {
+        Log.d(TAG, "refreshDataUsageInfo: ");
+        mBgHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                DataUsageInfo usage = getRecentCachedUsage();
+                if (usage == null) {
+                    usage = getDataUsageInfo();
+                }
+                if (usage != null) {
+                    callback.onDataUsageInfo(usage);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the cached usage if it is for the current data subscription and was queried less
+     * than {@link #MIN_REFRESH_INTERVAL} ago, null otherwise.
+     */
+    private DataUsageInfo getRecentCachedUsage() {
+        Log.d(TAG, "getRecentCachedUsage: ");
+        final String subscriberId = getActiveSubscriberId(mContext);
+        synchronized (mUsageLock) {
+            if (mCachedUsage == null || subscriberId == null
+                    || !subscriberId.equals(mCachedSubscriberId)
+                    || SystemClock.elapsedRealtime() - mCachedUsageTime > MIN_REFRESH_INTERVAL) {
+                return null;
+            }
+            mCacheHits++;
+            return mCachedUsage;
+        }
+    }
+
+    @Override
+    public void dump(PrintWriter pw) {
+        synchronized (mUsageLock) {
+            pw.println("  MobileDataController:");
+            pw.print("    mQueryCount="); pw.println(mQueryCount);
+            pw.print("    mCacheHits="); pw.println(mCacheHits);
+            pw.print("    mLastQueryDuration="); pw.print(mLastQueryDuration); pw.println("ms");
+            pw.print("    cacheAge=");
+            pw.println(mCachedUsage != null
+                    ? (SystemClock.elapsedRealtime() - mCachedUsageTime) + "ms" : "none");
+        }
+    }
+
     private NetworkPolicy findNetworkPolicy(NetworkTemplate template) {
         Log.d(TAG, "findNetworkPolicy: ");
         if (mPolicyManager == null || template == null) return null;
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.statusbar.policy;
+
+import android.telephony.TelephonyManager;
+
+import com.android.systemui.statusbar.policy.MobileSignalController.MobileIconGroup;
+
+/**
+ * Precomputed resolution of the mobile signal icons, indexed by network type, level, inet
+ * condition, roaming and data activity.  Built by {@link MobileSignalController} for every
+ * configuration, and plain Java so that it can be checked on the JVM.
+ */
+class MobileIconTable {
+    static final int NUM_LEVELS = TelephonyIcons.TELEPHONY_NUM_LEVELS;
+    static final int NUM_INET_CONDITIONS = 2;
+    static final int NUM_DATA_ACTIVITIES = TelephonyManager.DATA_ACTIVITY_DORMANT + 1;
+
+    private static final int ACTIVITY_IN = 1;
+    private static final int ACTIVITY_OUT = 2;
+
+    private final MobileIconGroup[] mNetworkTypeIcons;
+    private final MobileIconGroup mDefaultIcons;
+
+    // A row per network type and roaming state, followed by the rows for network types without
+    // an icon group and the carrier network change row
+    private final int mDefaultRow;
+    private final int mCarrierNetworkChangeRow;
+    private final MobileIconGroup[] mRowIcons;
+
+    // Indexed by indexOf(row, level, inetCondition, dataActivity)
+    private final int[] mSbIcons;
+    private final int[] mQsIcons;
+    private final int[] mContentDescs;
+    private final byte[] mActivity;
+
+    /**
+     * @param networkTypeIcons the icon group of each network type, null for the types that use
+     *        the default icons
+     */
+    MobileIconTable(MobileIconGroup[] networkTypeIcons, MobileIconGroup defaultIcons) {
+        mNetworkTypeIcons = networkTypeIcons;
+        mDefaultIcons = defaultIcons;
+        mDefaultRow = networkTypeIcons.length * 2;
+        mCarrierNetworkChangeRow = mDefaultRow + 2;
+        int numRows = mCarrierNetworkChangeRow + 1;
+
+        mRowIcons = new MobileIconGroup[numRows];
+        for (int i = 0; i < networkTypeIcons.length; i++) {
+            mRowIcons[i * 2] = resolveIconGroup(i, false, false);
+            mRowIcons[i * 2 + 1] = resolveIconGroup(i, true, false);
+        }
+        mRowIcons[mDefaultRow] = resolveIconGroup(-1, false, false);
+        mRowIcons[mDefaultRow + 1] = resolveIconGroup(-1, true, false);
+        mRowIcons[mCarrierNetworkChangeRow] = resolveIconGroup(-1, false, true);
+
+        int size = numRows * NUM_LEVELS * NUM_INET_CONDITIONS * NUM_DATA_ACTIVITIES;
+        mSbIcons = new int[size];
+        mQsIcons = new int[size];
+        mContentDescs = new int[size];
+        mActivity = new byte[size];
+        for (int row = 0; row < numRows; row++) {
+            MobileIconGroup icons = mRowIcons[row];
+            for (int level = 0; level < NUM_LEVELS; level++) {
+                for (int inet = 0; inet < NUM_INET_CONDITIONS; inet++) {
+                    for (int activity = 0; activity < NUM_DATA_ACTIVITIES; activity++) {
+                        int index = indexOf(row, level, inet, activity);
+                        mSbIcons[index] = icons.mSbIcons[inet][level];
+                        mQsIcons[index] = icons.mQsIcons[inet][level];
+                        mContentDescs[index] = icons.mContentDesc[level];
+                        mActivity[index] = (byte) (
+                                (isActivityIn(activity) ? ACTIVITY_IN : 0)
+                                | (isActivityOut(activity) ? ACTIVITY_OUT : 0));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Resolves the icon group of a network type, or of the default icons for -1. */
+    private MobileIconGroup resolveIconGroup(int networkType, boolean roaming,
+            boolean carrierNetworkChange) {
+        if (carrierNetworkChange) {
+            return TelephonyIcons.CARRIER_NETWORK_CHANGE;
+        } else if (roaming) {
+            return TelephonyIcons.ROAMING;
+        }
+        MobileIconGroup icons = networkType >= 0 && networkType < mNetworkTypeIcons.length
+                ? mNetworkTypeIcons[networkType] : null;
+        return icons != null ? icons : mDefaultIcons;
+    }
+
+    /** Returns the row of a network type, roaming and carrier network change state. */
+    int getRow(int networkType, boolean roaming, boolean carrierNetworkChange) {
+        if (carrierNetworkChange) {
+            return mCarrierNetworkChangeRow;
+        }
+        int row = networkType >= 0 && networkType < mNetworkTypeIcons.length
+                && mNetworkTypeIcons[networkType] != null ? networkType * 2 : mDefaultRow;
+        return roaming ? row + 1 : row;
+    }
+
+    MobileIconGroup getIconGroup(int row) {
+        return mRowIcons[row];
+    }
+
+    /**
+     * Returns the index of the connected icons of a row, or -1 if the level, inet condition or
+     * data activity are out of range.
+     */
+    int indexOf(int row, int level, int inetCondition, int dataActivity) {
+        if (level < 0 || level >= NUM_LEVELS || inetCondition < 0
+                || inetCondition >= NUM_INET_CONDITIONS || dataActivity < 0
+                || dataActivity >= NUM_DATA_ACTIVITIES) {
+            return -1;
+        }
+        return ((row * NUM_LEVELS + level) * NUM_INET_CONDITIONS + inetCondition)
+                * NUM_DATA_ACTIVITIES + dataActivity;
+    }
+
+    int getSbIcon(int index) {
+        return mSbIcons[index];
+    }
+
+    int getQsIcon(int index) {
+        return mQsIcons[index];
+    }
+
+    int getContentDescription(int index) {
+        return mContentDescs[index];
+    }
+
+    boolean hasActivityIn(int index) {
+        return (mActivity[index] & ACTIVITY_IN) != 0;
+    }
+
+    boolean hasActivityOut(int index) {
+        return (mActivity[index] & ACTIVITY_OUT) != 0;
+    }
+
+    static boolean isActivityIn(int dataActivity) {
+        return dataActivity == TelephonyManager.DATA_ACTIVITY_INOUT
+                || dataActivity == TelephonyManager.DATA_ACTIVITY_IN;
+    }
+
+    static boolean isActivityOut(int dataActivity) {
+        return dataActivity == TelephonyManager.DATA_ACTIVITY_INOUT
+                || dataActivity == TelephonyManager.DATA_ACTIVITY_OUT;
+    }
+}
@@ -56,12 +56,20 @@ public class MobileSignalController extends SignalController<
 
     // @VisibleForDemoMode
     final SparseArray<MobileIconGroup> mNetworkToIconLookup;
+    // The icons for every network type and signal state, rebuilt with every configuration.
+    private MobileIconTable mIconTable;
+    // The row of mIconTable for the current network type, roaming and carrier network change.
+    private int mIconRow;
+    // Resolved content description strings, keyed by resource id. Cleared with every
+    // configuration so a locale change picks up new strings.
+    private final SparseArray<String> mStringCache = new SparseArray<>();
 
     // Since some pieces of the phone state are interdependent we store it locally,
     // this could potentially become part of MobileState for simplification/complication
     // of code.
     private int mDataNetType = TelephonyManager.NETWORK_TYPE_UNKNOWN;
     private int mDataState = TelephonyManager.DATA_DISCONNECTED;
+    private int mDataActivity = TelephonyManager.DATA_ACTIVITY_NONE;
     private ServiceState mServiceState;
     private SignalStrength mSignalStrength;
     private MobileIconGroup mDefaultIcons;
@@ -204,15 +212,76 @@ public class MobileSignalController extends SignalController<
             mNetworkToIconLookup.put(TelephonyManager.NETWORK_TYPE_LTE, TelephonyIcons.LTE);
         }
         mNetworkToIconLookup.put(TelephonyManager.NETWORK_TYPE_IWLAN, TelephonyIcons.WFC);
+
+        int maxNetworkType = 0;
+        for (int i = 0; i < mNetworkToIconLookup.size(); i++) {
+            maxNetworkType = Math.max(maxNetworkType, mNetworkToIconLookup.keyAt(i));
+        }
+        MobileIconGroup[] networkTypeIcons = new MobileIconGroup[maxNetworkType + 1];
+        for (int i = 0; i < mNetworkToIconLookup.size(); i++) {
+            networkTypeIcons[mNetworkToIconLookup.keyAt(i)] = mNetworkToIconLookup.valueAt(i);
+        }
+        mIconTable = new MobileIconTable(networkTypeIcons, mDefaultIcons);
+        mStringCache.clear();
+    }
+
+    /**
+     * Like {@link #getStringIfExists} but resolves every resource only once per configuration,
+     * since the same few content descriptions are looked up on every signal update.
+     */
+    private String getCachedString(int resId) {
+        if (resId == 0) return "";
+        String string = mStringCache.get(resId);
+        if (string == null) {
+            string = mContext.getString(resId);
+            mStringCache.put(resId, string);
+        }
+        return string;
+    }
+
+    /**
+     * Returns the index of the current signal state in mIconTable, or -1 if the current icons
+     * don't come from the table, like when we are not connected or demo mode has set them.
+     */
+    private int getIconTableIndex() {
+        if (!mCurrentState.connected
+                || mCurrentState.iconGroup != mIconTable.getIconGroup(mIconRow)) {
+            return -1;
+        }
+        return mIconTable.indexOf(mIconRow, mCurrentState.level, mCurrentState.inetCondition,
+                mDataActivity);
+    }
+
+    @Override
+    public int getCurrentIconId() {
+        Log.d(TAG, "getCurrentIconId: ");
+        int index = getIconTableIndex();
+        return index >= 0 ? mIconTable.getSbIcon(index) : super.getCurrentIconId();
+    }
+
+    @Override
+    public int getQsCurrentIconId() {
+        Log.d(TAG, "getQsCurrentIconId: ");
+        int index = getIconTableIndex();
+        return index >= 0 ? mIconTable.getQsIcon(index) : super.getQsCurrentIconId();
+    }
+
+    @Override
+    public int getContentDescription() {
+        Log.d(TAG, "getContentDescription: ");
+        int index = getIconTableIndex();
+        return index >= 0 ? mIconTable.getContentDescription(index)
+                : super.getContentDescription();
     }
 
     @Override
     public void notifyListeners() {
         Log.d(TAG, "notifyListeners: ");
         MobileIconGroup icons = getIcons();
+        int index = getIconTableIndex();
 
-        String contentDescription = getStringIfExists(getContentDescription());
-        String dataContentDescription = getStringIfExists(icons.mDataContentDescription);
+        String contentDescription = getCachedString(getContentDescription());
+        String dataContentDescription = getCachedString(icons.mDataContentDescription);
 
         // Show icon in QS when we are connected or need to show roaming.
         boolean showDataIcon = mCurrentState.dataConnected
@@ -232,10 +301,12 @@ public class MobileSignalController extends SignalController<
         }
         boolean activityIn = mCurrentState.dataConnected
                         && !mCurrentState.carrierNetworkChangeMode
-                        && mCurrentState.activityIn;
+                        && (index >= 0 ? mIconTable.hasActivityIn(index)
+                                : mCurrentState.activityIn);
         boolean activityOut = mCurrentState.dataConnected
                         && !mCurrentState.carrierNetworkChangeMode
-                        && mCurrentState.activityOut;
+                        && (index >= 0 ? mIconTable.hasActivityOut(index)
+                                : mCurrentState.activityOut);
         showDataIcon &= mCurrentState.isDefault
                 || mCurrentState.iconGroup == TelephonyIcons.ROAMING;
         int typeIcon = showDataIcon ? icons.mDataType : 0;
@@ -393,19 +464,13 @@ public class MobileSignalController extends SignalController<
                 mCurrentState.level = mSignalStrength.getLevel();
             }
         }
-        if (mNetworkToIconLookup.indexOfKey(mDataNetType) >= 0) {
-            mCurrentState.iconGroup = mNetworkToIconLookup.get(mDataNetType);
-        } else {
-            mCurrentState.iconGroup = mDefaultIcons;
-        }
         mCurrentState.dataConnected = mCurrentState.connected
                 && mDataState == TelephonyManager.DATA_CONNECTED;
 
-        if (isCarrierNetworkChangeActive()) {
-            mCurrentState.iconGroup = TelephonyIcons.CARRIER_NETWORK_CHANGE;
-        } else if (isRoaming()) {
-            mCurrentState.iconGroup = TelephonyIcons.ROAMING;
-        }
+        final boolean carrierNetworkChange = isCarrierNetworkChangeActive();
+        mIconRow = mIconTable.getRow(mDataNetType, !carrierNetworkChange && isRoaming(),
+                carrierNetworkChange);
+        mCurrentState.iconGroup = mIconTable.getIconGroup(mIconRow);
         if (isEmergencyOnly() != mCurrentState.isEmergency) {
             mCurrentState.isEmergency = isEmergencyOnly();
             mNetworkController.recalculateEmergency();
@@ -422,10 +487,9 @@ public class MobileSignalController extends SignalController<
     @VisibleForTesting
     void setActivity(int activity) {
         Log.d(TAG, "setActivity: ");
-        mCurrentState.activityIn = activity == TelephonyManager.DATA_ACTIVITY_INOUT
-                || activity == TelephonyManager.DATA_ACTIVITY_IN;
-        mCurrentState.activityOut = activity == TelephonyManager.DATA_ACTIVITY_INOUT
-                || activity == TelephonyManager.DATA_ACTIVITY_OUT;
+        mDataActivity = activity;
+        mCurrentState.activityIn = MobileIconTable.isActivityIn(activity);
+        mCurrentState.activityOut = MobileIconTable.isActivityOut(activity);
         notifyListenersIfNecessary();
     }
 
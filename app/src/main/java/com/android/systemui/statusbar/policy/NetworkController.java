@@ -22,6 +22,7 @@ import android.telephony.SubscriptionInfo;
 
 import com.android.settingslib.wifi.AccessPoint;
 
+import java.io.PrintWriter;
 import java.util.List;
 
 public interface NetworkController {
@@ -94,6 +95,18 @@ public interface NetworkController {
         boolean isMobileDataEnabled();
         void setMobileDataEnabled(boolean enabled);
         DataUsageInfo getDataUsageInfo();
+        /** Returns the last queried usage right away, without querying. May be null. */
+        DataUsageInfo getCachedDataUsageInfo();
+        /**
+         * Queries usage in the background, unless the cached usage is recent enough, and
+         * reports it to {@code callback} on a background thread.
+         */
+        void refreshDataUsageInfo(DataUsageCallback callback);
+        void dump(PrintWriter pw);
+
+        public interface DataUsageCallback {
+            void onDataUsageInfo(DataUsageInfo info);
+        }
 
         public static class DataUsageInfo {
             public String carrier;
@@ -87,8 +87,9 @@ public class NetworkControllerImpl extends BroadcastReceiver
     @VisibleForTesting
     final EthernetSignalController mEthernetSignalController;
 
+    // Replaced, never mutated, when the subscriptions change, see setCurrentSubscriptions.
     @VisibleForTesting
-    final Map<Integer, MobileSignalController> mMobileSignalControllers =
+    Map<Integer, MobileSignalController> mMobileSignalControllers =
             new HashMap<Integer, MobileSignalController>();
     // When no SIMs are around at setup, and one is added later, it seems to default to the first
     // SIM for most actions.  This may be null if there aren't any SIMs around.
@@ -129,6 +130,10 @@ public class NetworkControllerImpl extends BroadcastReceiver
     @VisibleForTesting
     ServiceState mLastServiceState;
 
+    // State for readers off the receiver looper, republished by the receiver looper whenever
+    // signal state changes. Never null.
+    private volatile NetworkSnapshot mSnapshot = NetworkSnapshot.EMPTY;
+
     /**
      * Construct this controller object and register for updates.
      */
@@ -187,6 +192,7 @@ public class NetworkControllerImpl extends BroadcastReceiver
 
         // AIRPLANE_MODE_CHANGED is sent at boot; we've probably already missed it
         updateAirplaneMode(true /* force callback */);
+        publishSnapshot();
     }
 
     private void registerListeners() {
@@ -229,7 +235,7 @@ public class NetworkControllerImpl extends BroadcastReceiver
     }
 
     public int getConnectedWifiLevel() {
-        return mWifiSignalController.getState().level;
+        return mSnapshot.wifiLevel;
     }
 
     @Override
@@ -245,7 +251,7 @@ public class NetworkControllerImpl extends BroadcastReceiver
     public void addEmergencyListener(EmergencyListener listener) {
         Log.d(TAG, "addEmergencyListener: ");
         mCallbackHandler.setListening(listener, true);
-        mCallbackHandler.setEmergencyCallsOnly(isEmergencyOnly());
+        mCallbackHandler.setEmergencyCallsOnly(mSnapshot.isEmergency);
     }
 
     public boolean hasMobileDataFeature() {
@@ -270,11 +276,33 @@ public class NetworkControllerImpl extends BroadcastReceiver
     }
 
     public String getMobileDataNetworkName() {
-        MobileSignalController controller = getDataController();
-        return controller != null ? controller.getState().networkNameData : "";
+        return mSnapshot.mobileDataNetworkName;
     }
 
     public boolean isEmergencyOnly() {
+        return mSnapshot.isEmergency;
+    }
+
+    /**
+     * Captures the state read by {@link #getConnectedWifiLevel}, {@link #isEmergencyOnly} and
+     * {@link #getMobileDataNetworkName} so other threads never see the signal controllers
+     * half way through an update. Call on the receiver looper after changing any of it.
+     */
+    void publishSnapshot() {
+        Log.d(TAG, "publishSnapshot: ");
+        final MobileSignalController dataController = getDataController();
+        final String networkName = dataController != null
+                ? dataController.getState().networkNameData : "";
+        final NetworkSnapshot snapshot = mSnapshot;
+        final int wifiLevel = mWifiSignalController.getState().level;
+        if (snapshot.wifiLevel == wifiLevel && snapshot.isEmergency == mIsEmergency
+                && snapshot.mobileDataNetworkName.equals(networkName)) {
+            return;
+        }
+        mSnapshot = new NetworkSnapshot(wifiLevel, mIsEmergency, networkName);
+    }
+
+    private boolean computeEmergencyOnly() {
         if (mMobileSignalControllers.size() == 0) {
             // When there are no active subscriptions, determine emengency state from last
             // broadcast.
@@ -309,13 +337,28 @@ public class NetworkControllerImpl extends BroadcastReceiver
      * so we should recheck and send out the state to listeners.
      */
     void recalculateEmergency() {
-        mIsEmergency = isEmergencyOnly();
+        mIsEmergency = computeEmergencyOnly();
         mCallbackHandler.setEmergencyCallsOnly(mIsEmergency);
+        publishSnapshot();
     }
 
     public void addSignalCallback(SignalCallback cb) {
         Log.d(TAG, "addSignalCallback: ");
         mCallbackHandler.setListening(cb, true);
+        // Send the initial state from the receiver looper, which owns it.
+        mReceiverHandler.post(mNotifyAllCallbacks);
+    }
+
+    private final Runnable mNotifyAllCallbacks = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(TAG, "mNotifyAllCallbacks: run: ");
+            notifyCurrentState();
+        }
+    };
+
+    private void notifyCurrentState() {
+        Log.d(TAG, "notifyCurrentState: ");
         mCallbackHandler.setSubs(mCurrentSubscriptions);
         mCallbackHandler.setIsAirplaneMode(new IconState(mAirplaneMode,
                 TelephonyIcons.FLIGHT_MODE_ICON, R.string.accessibility_airplane_mode, mContext));
@@ -407,6 +450,7 @@ public class NetworkControllerImpl extends BroadcastReceiver
                 mWifiSignalController.handleBroadcast(intent);
             }
         }
+        publishSnapshot();
     }
 
     public void onConfigurationChanged() {
@@ -445,7 +489,8 @@ public class NetworkControllerImpl extends BroadcastReceiver
             subscriptions = Collections.emptyList();
         }
         // If there have been no relevant changes to any of the subscriptions, we can leave as is.
-        if (hasCorrectMobileControllers(subscriptions)) {
+        if (hasCorrectMobileControllers(subscriptions)
+                && hasSameSubscriptionOrder(subscriptions)) {
             // Even if the controllers are correct, make sure we have the right no sims state.
             // Such as on boot, don't need any controllers, because there are no sims,
             // but we still need to update the no sim state.
@@ -457,6 +502,25 @@ public class NetworkControllerImpl extends BroadcastReceiver
         recalculateEmergency();
     }
 
+    /**
+     * Returns whether {@code subscriptions}, once sorted, are in the order of the current ones.
+     * Only the order is compared, so call after {@link #hasCorrectMobileControllers}.
+     */
+    private boolean hasSameSubscriptionOrder(List<SubscriptionInfo> subscriptions) {
+        Log.d(TAG, "hasSameSubscriptionOrder: ");
+        if (subscriptions.size() != mCurrentSubscriptions.size()) {
+            return false;
+        }
+        Collections.sort(subscriptions, SUBSCRIPTION_ORDER);
+        for (int i = 0; i < subscriptions.size(); i++) {
+            if (subscriptions.get(i).getSubscriptionId()
+                    != mCurrentSubscriptions.get(i).getSubscriptionId()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @VisibleForTesting
     protected void updateNoSims() {
         Log.d(TAG, "updateNoSims: ");
@@ -469,31 +533,24 @@ public class NetworkControllerImpl extends BroadcastReceiver
 
     @VisibleForTesting
     void setCurrentSubscriptions(List<SubscriptionInfo> subscriptions) {
-        Collections.sort(subscriptions, new Comparator<SubscriptionInfo>() {
-            @Override
-            public int compare(SubscriptionInfo lhs, SubscriptionInfo rhs) {
-                Log.d(TAG, "setCurrentSubscriptions: compare: ");
-                return lhs.getSimSlotIndex() == rhs.getSimSlotIndex()
-                        ? lhs.getSubscriptionId() - rhs.getSubscriptionId()
-                        : lhs.getSimSlotIndex() - rhs.getSimSlotIndex();
-            }
-        });
+        Collections.sort(subscriptions, SUBSCRIPTION_ORDER);
         mCurrentSubscriptions = subscriptions;
 
-        HashMap<Integer, MobileSignalController> cachedControllers =
-                new HashMap<Integer, MobileSignalController>(mMobileSignalControllers);
-        mMobileSignalControllers.clear();
+        // Controllers left in here once the new map is built are for removed subscriptions.
+        final Map<Integer, MobileSignalController> cachedControllers = mMobileSignalControllers;
+        final HashMap<Integer, MobileSignalController> controllers =
+                new HashMap<Integer, MobileSignalController>(subscriptions.size());
         final int num = subscriptions.size();
         for (int i = 0; i < num; i++) {
             int subId = subscriptions.get(i).getSubscriptionId();
             // If we have a copy of this controller already reuse it, otherwise make a new one.
             if (cachedControllers.containsKey(subId)) {
-                mMobileSignalControllers.put(subId, cachedControllers.remove(subId));
+                controllers.put(subId, cachedControllers.remove(subId));
             } else {
                 MobileSignalController controller = new MobileSignalController(mContext, mConfig,
                         mHasMobileDataFeature, mPhone, mCallbackHandler,
                         this, subscriptions.get(i), mSubDefaults, mReceiverHandler.getLooper());
-                mMobileSignalControllers.put(subId, controller);
+                controllers.put(subId, controller);
                 if (subscriptions.get(i).getSimSlotIndex() == 0) {
                     mDefaultSignalController = controller;
                 }
@@ -502,6 +559,7 @@ public class NetworkControllerImpl extends BroadcastReceiver
                 }
             }
         }
+        mMobileSignalControllers = controllers;
         if (mListening) {
             for (Integer key : cachedControllers.keySet()) {
                 if (cachedControllers.get(key) == mDefaultSignalController) {
@@ -655,6 +713,8 @@ public class NetworkControllerImpl extends BroadcastReceiver
         mEthernetSignalController.dump(pw);
 
         mAccessPoints.dump(pw);
+
+        mCallbackHandler.dump(pw);
     }
 
     private static final String emergencyToString(int emergencySource) {
@@ -812,6 +872,17 @@ public class NetworkControllerImpl extends BroadcastReceiver
         return info;
     }
 
+    /** Orders subscriptions by slot, the order their icons are shown in. */
+    private static final Comparator<SubscriptionInfo> SUBSCRIPTION_ORDER =
+            new Comparator<SubscriptionInfo>() {
+        @Override
+        public int compare(SubscriptionInfo lhs, SubscriptionInfo rhs) {
+            return lhs.getSimSlotIndex() == rhs.getSimSlotIndex()
+                    ? lhs.getSubscriptionId() - rhs.getSubscriptionId()
+                    : lhs.getSimSlotIndex() - rhs.getSimSlotIndex();
+        }
+    };
+
     private class SubListener extends OnSubscriptionsChangedListener {
         @Override
         public void onSubscriptionsChanged() {
@@ -832,6 +903,21 @@ public class NetworkControllerImpl extends BroadcastReceiver
         }
     };
 
+    /** Immutable copy of the state read from outside the receiver looper. */
+    static final class NetworkSnapshot {
+        static final NetworkSnapshot EMPTY = new NetworkSnapshot(0, false, "");
+
+        final int wifiLevel;
+        final boolean isEmergency;
+        final String mobileDataNetworkName;
+
+        NetworkSnapshot(int wifiLevel, boolean isEmergency, String mobileDataNetworkName) {
+            this.wifiLevel = wifiLevel;
+            this.isEmergency = isEmergency;
+            this.mobileDataNetworkName = mobileDataNetworkName;
+        }
+    }
+
     public interface EmergencyListener {
         void setEmergencyCallsOnly(boolean emergencyOnly);
     }
@@ -167,6 +167,7 @@ public abstract class SignalController<T extends SignalController.State,
         if (isDirty()) {
             saveLastState();
             notifyListeners();
+            mNetworkController.publishSnapshot();
         }
     }
 
@@ -17,11 +17,7 @@
 package com.android.systemui.statusbar.policy;
 
 import android.app.ActivityManager;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.os.UserHandle;
 import android.text.format.DateFormat;
 import android.util.AttributeSet;
 import android.widget.LinearLayout;
@@ -33,25 +29,11 @@ import com.android.systemui.R;
  * Container for a clock which has two separate views for the clock itself and AM/PM indicator. This
  * is used to scale the clock independently of AM/PM.
  */
-public class SplitClockView extends LinearLayout {
+public class SplitClockView extends LinearLayout implements ClockTicker.Callback {
 
     private TextClock mTimeView;
     private TextClock mAmPmView;
 
-    private BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            final String action = intent.getAction();
-            if (Intent.ACTION_TIME_CHANGED.equals(action)
-                    || Intent.ACTION_TIMEZONE_CHANGED.equals(action)
-                    || Intent.ACTION_LOCALE_CHANGED.equals(action)
-                    || Intent.ACTION_CONFIGURATION_CHANGED.equals(action)
-                    || Intent.ACTION_USER_SWITCHED.equals(action)) {
-                updatePatterns();
-            }
-        }
-    };
-
     public SplitClockView(Context context, AttributeSet attrs) {
         super(context, attrs);
     }
@@ -69,13 +51,7 @@ public class SplitClockView extends LinearLayout {
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
 
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(Intent.ACTION_TIME_CHANGED);
-        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
-        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
-        filter.addAction(Intent.ACTION_CONFIGURATION_CHANGED);
-        filter.addAction(Intent.ACTION_USER_SWITCHED);
-        getContext().registerReceiverAsUser(mIntentReceiver, UserHandle.ALL, filter, null, null);
+        ClockTicker.getInstance(getContext()).addCallback(this);
 
         updatePatterns();
     }
@@ -83,7 +59,15 @@ public class SplitClockView extends LinearLayout {
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        getContext().unregisterReceiver(mIntentReceiver);
+        ClockTicker.getInstance(getContext()).removeCallback(this);
+    }
+
+    @Override
+    public void onTimeChanged(boolean formatChanged) {
+        // TextClock ticks by itself, only the patterns need to follow format changes.
+        if (formatChanged) {
+            updatePatterns();
+        }
     }
 
     private void updatePatterns() {
@@ -110,6 +110,7 @@ public class QsTuner extends Fragment implements Callback {
 
         mQsPanel = new DraggableQsPanel(getContext());
         mTileHost = new CustomHost(getContext());
+        mTileHost.createTilesIfNeeded();
         mTileHost.setCallback(this);
         mQsPanel.setTiles(mTileHost.getTiles());
         mQsPanel.setHost(mTileHost);
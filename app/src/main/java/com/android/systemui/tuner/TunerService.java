@@ -32,6 +32,8 @@ import android.os.Looper;
 import android.os.UserHandle;
 import android.provider.Settings;
 import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.view.Choreographer;
 
 import com.android.systemui.BatteryMeterView;
 import com.android.systemui.DemoMode;
@@ -44,6 +46,7 @@ import com.android.systemui.statusbar.phone.SystemUIDialog;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
 
 
 public class TunerService extends SystemUI {
@@ -51,10 +54,13 @@ public class TunerService extends SystemUI {
     public static final String ACTION_CLEAR = "com.android.systemui.action.CLEAR_TUNER";
 
     private final Observer mObserver = new Observer();
-    // Map of Uris we listen on to their settings keys.
-    private final ArrayMap<Uri, String> mListeningUris = new ArrayMap<>();
     // Map of settings keys to the listener.
     private final HashMap<String, List<Tunable>> mTunableLookup = new HashMap<>();
+    // Last value sent for each key, to skip notifications that don't change anything.
+    private final ArrayMap<String, String> mValues = new ArrayMap<>();
+    // Keys changed since the last frame, all reloaded together in mReloadChangedKeys.
+    private final ArraySet<String> mChangedKeys = new ArraySet<>();
+    private boolean mReloadPosted;
 
     private ContentResolver mContentResolver;
     private int mCurrentUser;
@@ -71,10 +77,13 @@ public class TunerService extends SystemUI {
             public void onUserSwitched(int newUserId) {
                 mCurrentUser = newUserId;
                 reloadAll();
-                reregisterAll();
             }
         };
         mUserTracker.startTracking();
+        // One observer for all secure settings and users, changes for keys nobody tunes or for
+        // other users are dropped in onChange.
+        mContentResolver.registerContentObserver(Settings.Secure.CONTENT_URI, true, mObserver,
+                UserHandle.USER_ALL);
     }
 
     public void addTunable(Tunable tunable, String... keys) {
@@ -88,13 +97,9 @@ public class TunerService extends SystemUI {
             mTunableLookup.put(key, new ArrayList<Tunable>());
         }
         mTunableLookup.get(key).add(tunable);
-        Uri uri = Settings.Secure.getUriFor(key);
-        if (!mListeningUris.containsKey(uri)) {
-            mListeningUris.put(uri, key);
-            mContentResolver.registerContentObserver(uri, false, mObserver, mCurrentUser);
-        }
         // Send the first state.
         String value = Settings.Secure.getStringForUser(mContentResolver, key, mCurrentUser);
+        mValues.put(key, value);
         tunable.onTuningChanged(key, value);
     }
 
@@ -104,19 +109,37 @@ public class TunerService extends SystemUI {
         }
     }
 
-    protected void reregisterAll() {
-        if (mListeningUris.size() == 0) {
+    public void reloadSetting(Uri uri) {
+        String key = uri.getLastPathSegment();
+        if (key == null || !mTunableLookup.containsKey(key)) {
             return;
         }
-        mContentResolver.unregisterContentObserver(mObserver);
-        for (Uri uri : mListeningUris.keySet()) {
-            mContentResolver.registerContentObserver(uri, false, mObserver, mCurrentUser);
+        mChangedKeys.add(key);
+        if (!mReloadPosted) {
+            mReloadPosted = true;
+            Choreographer.getInstance().postFrameCallback(mReloadChangedKeys);
         }
     }
 
-    public void reloadSetting(Uri uri) {
-        String key = mListeningUris.get(uri);
+    private final Choreographer.FrameCallback mReloadChangedKeys =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mReloadPosted = false;
+            for (int i = 0; i < mChangedKeys.size(); i++) {
+                reloadKey(mChangedKeys.valueAt(i));
+            }
+            mChangedKeys.clear();
+        }
+    };
+
+    /** Reads {@code key} and notifies its tunables if the value differs from the last one. */
+    private void reloadKey(String key) {
         String value = Settings.Secure.getStringForUser(mContentResolver, key, mCurrentUser);
+        if (mValues.containsKey(key) && Objects.equals(mValues.get(key), value)) {
+            return;
+        }
+        mValues.put(key, value);
         for (Tunable tunable : mTunableLookup.get(key)) {
             tunable.onTuningChanged(key, value);
         }
@@ -124,11 +147,7 @@ public class TunerService extends SystemUI {
 
     private void reloadAll() {
         for (String key : mTunableLookup.keySet()) {
-            String value = Settings.Secure.getStringForUser(mContentResolver, key,
-                    mCurrentUser);
-            for (Tunable tunable : mTunableLookup.get(key)) {
-                tunable.onTuningChanged(key, value);
-            }
+            reloadKey(key);
         }
     }
 
@@ -223,7 +242,7 @@ public class TunerService extends SystemUI {
 
         @Override
         public void onChange(boolean selfChange, Uri uri, int userId) {
-            if (userId == ActivityManager.getCurrentUser()) {
+            if (userId == mCurrentUser && uri != null) {
                 reloadSetting(uri);
             }
         }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.statusbar.policy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.telephony.TelephonyManager;
+
+import com.android.systemui.statusbar.policy.MobileSignalController.MobileIconGroup;
+
+import org.junit.Test;
+
+/**
+ * Checks every entry of {@link MobileIconTable} against the way {@link SignalController} and
+ * {@link MobileSignalController} resolve the icons from the icon groups.
+ */
+public class MobileIconTableTest {
+
+    @Test
+    public void testDefaultConfiguration() {
+        MobileIconGroup[] icons = new MobileIconGroup[TelephonyManager.NETWORK_TYPE_IWLAN + 1];
+        icons[TelephonyManager.NETWORK_TYPE_UNKNOWN] = TelephonyIcons.UNKNOWN;
+        icons[TelephonyManager.NETWORK_TYPE_EDGE] = TelephonyIcons.E;
+        icons[TelephonyManager.NETWORK_TYPE_CDMA] = TelephonyIcons.ONE_X;
+        icons[TelephonyManager.NETWORK_TYPE_1xRTT] = TelephonyIcons.ONE_X;
+        icons[TelephonyManager.NETWORK_TYPE_UMTS] = TelephonyIcons.THREE_G;
+        icons[TelephonyManager.NETWORK_TYPE_HSDPA] = TelephonyIcons.THREE_G;
+        icons[TelephonyManager.NETWORK_TYPE_LTE] = TelephonyIcons.LTE;
+        icons[TelephonyManager.NETWORK_TYPE_IWLAN] = TelephonyIcons.WFC;
+        checkTable(icons, TelephonyIcons.G);
+    }
+
+    @Test
+    public void testShowAtLeast3GConfiguration() {
+        MobileIconGroup[] icons = new MobileIconGroup[TelephonyManager.NETWORK_TYPE_IWLAN + 1];
+        icons[TelephonyManager.NETWORK_TYPE_UNKNOWN] = TelephonyIcons.THREE_G;
+        icons[TelephonyManager.NETWORK_TYPE_EDGE] = TelephonyIcons.THREE_G;
+        icons[TelephonyManager.NETWORK_TYPE_HSPA] = TelephonyIcons.H;
+        icons[TelephonyManager.NETWORK_TYPE_LTE] = TelephonyIcons.FOUR_G;
+        checkTable(icons, TelephonyIcons.THREE_G);
+    }
+
+    private void checkTable(MobileIconGroup[] networkTypeIcons, MobileIconGroup defaultIcons) {
+        MobileIconTable table = new MobileIconTable(networkTypeIcons, defaultIcons);
+        // Include network types that are out of range of the lookup
+        for (int type = -1; type <= networkTypeIcons.length + 1; type++) {
+            for (int roaming = 0; roaming < 2; roaming++) {
+                for (int change = 0; change < 2; change++) {
+                    MobileIconGroup expected = resolveIconGroup(networkTypeIcons, defaultIcons,
+                            type, roaming != 0, change != 0);
+                    int row = table.getRow(type, roaming != 0, change != 0);
+                    assertSame(expected, table.getIconGroup(row));
+                    checkRow(table, row, expected);
+                }
+            }
+        }
+    }
+
+    private void checkRow(MobileIconTable table, int row, MobileIconGroup expected) {
+        for (int level = 0; level < MobileIconTable.NUM_LEVELS; level++) {
+            for (int inet = 0; inet < MobileIconTable.NUM_INET_CONDITIONS; inet++) {
+                for (int activity = 0; activity < MobileIconTable.NUM_DATA_ACTIVITIES;
+                        activity++) {
+                    int index = table.indexOf(row, level, inet, activity);
+                    assertEquals(expected.mSbIcons[inet][level], table.getSbIcon(index));
+                    assertEquals(expected.mQsIcons[inet][level], table.getQsIcon(index));
+                    assertEquals(expected.mContentDesc[level],
+                            table.getContentDescription(index));
+                    assertEquals(activity == TelephonyManager.DATA_ACTIVITY_IN
+                            || activity == TelephonyManager.DATA_ACTIVITY_INOUT,
+                            table.hasActivityIn(index));
+                    assertEquals(activity == TelephonyManager.DATA_ACTIVITY_OUT
+                            || activity == TelephonyManager.DATA_ACTIVITY_INOUT,
+                            table.hasActivityOut(index));
+                }
+            }
+        }
+        assertEquals(-1, table.indexOf(row, -1, 0, 0));
+        assertEquals(-1, table.indexOf(row, MobileIconTable.NUM_LEVELS, 0, 0));
+    }
+
+    /** The icon group resolution MobileSignalController.updateTelephony used before the table. */
+    private static MobileIconGroup resolveIconGroup(MobileIconGroup[] networkTypeIcons,
+            MobileIconGroup defaultIcons, int networkType, boolean roaming,
+            boolean carrierNetworkChange) {
+        MobileIconGroup networkIcons = networkType >= 0 && networkType < networkTypeIcons.length
+                ? networkTypeIcons[networkType] : null;
+        MobileIconGroup icons = networkIcons != null ? networkIcons : defaultIcons;
+        if (carrierNetworkChange) {
+            icons = TelephonyIcons.CARRIER_NETWORK_CHANGE;
+        } else if (roaming) {
+            icons = TelephonyIcons.ROAMING;
+        }
+        return icons;
+    }
+}